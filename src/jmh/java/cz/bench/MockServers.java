@@ -0,0 +1,209 @@
+package cz.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lokální náhrady služeb pro benchmarky, všechno na jednom HTTP serveru:
+ * <ul>
+ *     <li>/services/rest/ - Flickr REST, vrací stránky photosets.getPhotos s url_o a jedno album
+ *     pro photosets.getList</li>
+ *     <li>/cdn/{id}.jpg - Flickr CDN, ETag + Range, jako skutečné originály</li>
+ *     <li>/v1/uploads - raw upload do Google Photos, vrací upload token</li>
+ *     <li>/v1/mediaItems:batchCreate - založení položek (jen tvar REST volání)</li>
+ * </ul>
+ * Každý požadavek čeká latencyMillis, datové cesty (CDN a upload) navíc s pravděpodobností
+ * throttlePercent vrátí 429 s Retry-After: 0.
+ */
+public class MockServers implements AutoCloseable {
+
+    private final HttpServer server;
+    private final int latencyMillis;
+    private final int throttlePercent;
+    private final int photos;
+    private final byte[] content;
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    public MockServers(int latencyMillis, int throttlePercent, int fileSize, int photos) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.throttlePercent = throttlePercent;
+        this.photos = photos;
+        this.content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // platformová vlákna: JDK HttpServer čte tělo v synchronized a virtuální vlákno by
+        // blokovalo carrier, na kterém běží i měřený kód
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/services/rest/", exchange -> handle(exchange, false, this::rest));
+        server.createContext("/cdn/", exchange -> handle(exchange, true, this::cdn));
+        server.createContext("/v1/uploads", exchange -> handle(exchange, true, this::upload));
+        server.createContext("/v1/mediaItems:batchCreate", exchange -> handle(exchange, false, this::batchCreate));
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public String host() {
+        return server.getAddress().getHostString();
+    }
+
+    public String url(String path) {
+        return "http://" + host() + ":" + port() + path;
+    }
+
+    public long throttled() {
+        return throttled.get();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, boolean throttle, Handler handler) throws IOException {
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (throttle && throttlePercent > 0 && ThreadLocalRandom.current().nextInt(100) < throttlePercent) {
+                throttled.incrementAndGet();
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            handler.handle(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * photosets.getPhotos - stránka fotek s extras, photosets.getList - jedno album se všemi fotkami.
+     */
+    private void rest(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange.getRequestURI());
+        if ("flickr.photosets.getList".equals(query.get("method"))) {
+            String xml = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<rsp stat=\"ok\">"
+                    + "<photosets page=\"1\" pages=\"1\" perpage=\"500\" total=\"1\">"
+                    + "<photoset id=\"1\" primary=\"0\" secret=\"s\" server=\"1\" farm=\"1\" photos=\"" + photos
+                    + "\" videos=\"0\" count_views=\"0\" count_comments=\"0\" date_create=\"0\" date_update=\"0\">"
+                    + "<title>bench</title><description/></photoset>"
+                    + "</photosets></rsp>";
+            send(exchange, 200, "text/xml; charset=utf-8", xml.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        int perPage = Integer.parseInt(query.getOrDefault("per_page", "500"));
+        int page = Integer.parseInt(query.getOrDefault("page", "1"));
+        int pages = Math.max(1, (photos + perPage - 1) / perPage);
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<rsp stat=\"ok\">");
+        xml.append("<photoset id=\"").append(query.getOrDefault("photoset_id", "1")).append("\" page=\"").append(page)
+                .append("\" pages=\"").append(pages).append("\" perpage=\"").append(perPage)
+                .append("\" total=\"").append(photos).append("\">");
+        for (int i = (page - 1) * perPage; i < Math.min(photos, page * perPage); i++) {
+            xml.append("<photo id=\"").append(i).append("\" secret=\"s\" server=\"1\" farm=\"1\" title=\"photo ")
+                    .append(i).append("\" isprimary=\"0\" originalformat=\"jpg\" media=\"photo\" url_o=\"")
+                    .append(url("/cdn/" + i + ".jpg")).append("\" height_o=\"1\" width_o=\"1\"/>");
+        }
+        xml.append("</photoset></rsp>");
+        send(exchange, 200, "text/xml; charset=utf-8", xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void cdn(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0;
+        int end = content.length - 1;
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring(6).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            if (start >= content.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        }
+        exchange.sendResponseHeaders(range != null ? 206 : 200, end - start + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, start, end - start + 1);
+        }
+    }
+
+    private void upload(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        send(exchange, 200, "text/plain", ("token-" + tokens.incrementAndGet()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Vrátí úspěch pro každý uploadToken v požadavku.
+     */
+    private void batchCreate(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        StringBuilder json = new StringBuilder("{\"newMediaItemResults\":[");
+        int from = 0;
+        int index = 0;
+        while ((from = body.indexOf("\"uploadToken\"", from)) >= 0) {
+            from++;
+            json.append(index++ > 0 ? "," : "")
+                    .append("{\"status\":{\"message\":\"Success\"},\"mediaItem\":{\"id\":\"m")
+                    .append(index).append("\"}}");
+        }
+        json.append("]}");
+        send(exchange, 200, "application/json", json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw != null) {
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return params;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
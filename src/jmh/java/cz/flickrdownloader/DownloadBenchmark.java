@@ -0,0 +1,131 @@
+package cz.flickrdownloader;
+
+import com.flickr4java.flickr.Flickr;
+import com.flickr4java.flickr.REST;
+import com.flickr4java.flickr.auth.Auth;
+import com.flickr4java.flickr.auth.Permission;
+import com.flickr4java.flickr.people.User;
+import cz.bench.MockServers;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.ContentIndex;
+import cz.util.ProgressStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Stažení celého alba stejnou cestou jako FlickrDownloader (stránky s extras,
+ * RangedDownload do .part, SHA-256, progress) proti lokálnímu mocku Flickru.
+ * Výsledek je v fotkách za sekundu.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DownloadBenchmark {
+
+    private static final int PHOTOS = 64;
+
+    @Param({"262144", "8388608"})
+    int fileSize;
+
+    @Param({"0", "20"})
+    int latencyMillis;
+
+    @Param({"0", "5"})
+    int throttlePercent;
+
+    @Param({"8"})
+    int workers;
+
+    private MockServers mock;
+    private Flickr flickr;
+    private Auth auth;
+    private AdaptiveRateLimiter limiter;
+    private PhotosetPages pages;
+    private ExecutorService executor;
+    private Path dir;
+    private ProgressStore photos;
+    private ContentIndex content;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mock = new MockServers(latencyMillis, throttlePercent, fileSize, PHOTOS);
+
+        // REST.get skládá URL jako scheme://host/path bez portu, port proto patří do hostu
+        REST rest = new REST(mock.host() + ":" + mock.port());
+        rest.setScheme("http");
+        flickr = new Flickr("bench", "bench", rest);
+        User user = new User();
+        user.setId("bench");
+        auth = new Auth(Permission.READ, user);
+        auth.setToken("bench");
+        auth.setTokenSecret("bench");
+
+        limiter = AdaptiveRateLimiter.create("bench", 1_000, 100, 10_000);
+        pages = new PhotosetPages(flickr, auth, limiter);
+        executor = Executors.newFixedThreadPool(workers, Thread.ofVirtual().name("download-", 0).factory());
+    }
+
+    @Setup(Level.Invocation)
+    public void freshAlbum() throws IOException {
+        dir = Files.createTempDirectory("download-bench");
+        Files.createDirectories(dir.resolve("album"));
+        photos = ProgressStore.open(dir.resolve("photos.txt").toString());
+        content = ContentIndex.open(dir.resolve("content.txt").toString());
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanAlbum() throws IOException {
+        photos.close();
+        content.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        mock.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PHOTOS)
+    public void downloadAlbum() throws Exception {
+        Path albumPath = dir.resolve("album");
+        List<Future<Boolean>> tasks = new ArrayList<>();
+        pages.forEachPhoto("1", pages.fetch("1", 1), photo -> tasks.add(executor.submit(() ->
+                FlickrDownloader.downloadPhoto(flickr, auth, limiter, photos, content, photo, albumPath))));
+        for (Future<Boolean> task : tasks) {
+            if (!task.get()) {
+                throw new IllegalStateException("Stažení selhalo");
+            }
+        }
+    }
+}
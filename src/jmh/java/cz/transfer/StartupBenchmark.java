@@ -0,0 +1,104 @@
+package cz.transfer;
+
+import cz.bench.MockServers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Studený start nového procesu až po první volání API (StartupProbe proti lokálnímu mocku
+ * Flickru), v milisekundách na jedno spuštění. Varianty:
+ * <ul>
+ *     <li>jvm - jar jako dnes, jen s výchozím CDS archivem JDK</li>
+ *     <li>appcds - s archivem tříd aplikace, vznikne v setupu trénovacím během jako v mvn -Pappcds</li>
+ *     <li>native - binárka z mvn -Pnative -Dnative.mainClass=cz.transfer.StartupProbe,
+ *     cesta přes -jvmArgs -Df2g.nativeProbe=...; spouští se jen s -p launch=native</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final String PROBE = "cz.transfer.StartupProbe";
+
+    @Param({"jvm", "appcds"})
+    String launch;
+
+    private MockServers mock;
+    private Path dir;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        mock = new MockServers(0, 0, 1, 1);
+        dir = Files.createTempDirectory("startup-bench");
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        String flickrUrl = "-Df2g.flickrUrl=" + mock.url("");
+        Path archive = dir.resolve("probe.jsa");
+
+        command = switch (launch) {
+            case "jvm" -> List.of(java, flickrUrl, "-cp", classPath, PROBE);
+            case "appcds" -> {
+                run(List.of(java, "-XX:ArchiveClassesAtExit=" + archive, flickrUrl, "-cp", classPath, PROBE));
+                yield List.of(java, "-XX:SharedArchiveFile=" + archive, flickrUrl, "-cp", classPath, PROBE);
+            }
+            case "native" -> List.of(System.getProperty("f2g.nativeProbe", "target/startup-probe"), flickrUrl);
+            default -> throw new IllegalArgumentException(launch);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mock.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String coldStart() throws Exception {
+        return run(command);
+    }
+
+    /**
+     * Spustí probe a počká na jeho konec; když první volání API neuspělo, benchmark selže.
+     */
+    private static String run(List<String> command) throws Exception {
+        Process process = new ProcessBuilder(new ArrayList<>(command))
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        // bez -Dstdout.encoding může být emoji v řádku přepsané na "?", hledáme proto text
+        if (process.waitFor() != 0 || !output.contains("ms od startu procesu (alb: ")) {
+            throw new IllegalStateException("StartupProbe selhal: " + output);
+        }
+        return output;
+    }
+}
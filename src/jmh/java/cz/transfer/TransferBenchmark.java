@@ -0,0 +1,145 @@
+package cz.transfer;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.UserCredentials;
+import cz.bench.MockServers;
+import cz.googleuploader.TokenManager;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.Http;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Přímý přenos CDN -> raw upload (FlickrToGooglePhotos.upload) a založení položek
+ * po dávkách 50 proti lokálním mockům. Výsledek je v fotkách za sekundu.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransferBenchmark {
+
+    private static final int PHOTOS = 100;
+    private static final int MAX_BATCH = 50;
+
+    @Param({"262144", "8388608"})
+    int fileSize;
+
+    @Param({"0", "20"})
+    int latencyMillis;
+
+    @Param({"0", "5"})
+    int throttlePercent;
+
+    @Param({"4"})
+    int workers;
+
+    private MockServers mock;
+    private OkHttpClient http;
+    private TokenManager tokens;
+    private AdaptiveRateLimiter limiter;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mock = new MockServers(latencyMillis, throttlePercent, fileSize, PHOTOS);
+        http = Http.client();
+        tokens = new TokenManager(UserCredentials.newBuilder()
+                .setClientId("bench")
+                .setClientSecret("bench")
+                .setRefreshToken("bench")
+                .setAccessToken(new AccessToken("bench", new Date(Long.MAX_VALUE)))
+                .build());
+        limiter = AdaptiveRateLimiter.create("bench", 1_000, 100, 10_000);
+        executor = Executors.newFixedThreadPool(workers, Thread.ofVirtual().name("transfer-", 0).factory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        tokens.close();
+        mock.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PHOTOS)
+    public void transferAlbum() throws Exception {
+        List<Future<String>> tasks = new ArrayList<>();
+        for (int i = 0; i < PHOTOS; i++) {
+            int id = i;
+            tasks.add(executor.submit(() -> transfer(id)));
+        }
+        List<String> tokens = new ArrayList<>();
+        for (Future<String> task : tasks) {
+            tokens.add(task.get());
+        }
+        for (int from = 0; from < tokens.size(); from += MAX_BATCH) {
+            batchCreate(tokens.subList(from, Math.min(tokens.size(), from + MAX_BATCH)));
+        }
+    }
+
+    private String transfer(int id) throws Exception {
+        Request download = new Request.Builder().url(mock.url("/cdn/" + id + ".jpg")).build();
+        while (true) {
+            limiter.awaitPause();
+            try (Response response = http.newCall(download).execute()) {
+                if (response.code() == 429) {
+                    limiter.onThrottle(0);
+                    continue;
+                }
+                String token = FlickrToGooglePhotos.upload(http, tokens, mock.url("/v1/uploads"), id + ".jpg", response.body());
+                if (token != null) {
+                    return token;
+                }
+                limiter.onThrottle(0);
+            }
+        }
+    }
+
+    private void batchCreate(List<String> tokens) throws IOException {
+        StringBuilder json = new StringBuilder("{\"newMediaItems\":[");
+        for (int i = 0; i < tokens.size(); i++) {
+            json.append(i > 0 ? "," : "").append("{\"simpleMediaItem\":{\"uploadToken\":\"")
+                    .append(tokens.get(i)).append("\"}}");
+        }
+        json.append("]}");
+        Request request = new Request.Builder()
+                .url(mock.url("/v1/mediaItems:batchCreate"))
+                .post(RequestBody.create(json.toString(), MediaType.get("application/json")))
+                .build();
+        try (Response response = http.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("batchCreate HTTP " + response.code());
+            }
+            response.body().string();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cz.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Progress soubory při 100k+ záznamech: načtení při startu, dotaz na hotovou
+ * a novou položku a zápis nové položky.
+ * <p>
+ * Utils.readLines/writeLine nahradil ProgressStore, měří se proto ten. Pro srovnání
+ * zůstávají běhy baseline*, které dělají totéž co původní readLines (TreeSet přes
+ * BufferedReader) a writeLine (otevření, append a zavření souboru na každý řádek).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgressStoreBenchmark {
+
+    @Param({"100000", "1000000"})
+    int entries;
+
+    private Path dir;
+    private Path file;
+    private ProgressStore store;
+    private ProgressStore appendStore;
+    private TreeSet<String> baseline;
+    private String[] hits;
+    private int next;
+    private long added;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("progress-bench");
+        file = dir.resolve("uploaded_files.txt");
+        hits = new String[1024];
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < entries; i++) {
+                String key = "Album_" + (i / 500) + "/IMG_" + i + ".jpg";
+                writer.write(key);
+                writer.newLine();
+                if (i % (entries / hits.length) == 0 && i / (entries / hits.length) < hits.length) {
+                    hits[i / (entries / hits.length)] = key;
+                }
+            }
+        }
+        store = ProgressStore.open(file.toString());
+        appendStore = ProgressStore.open(dir.resolve("append.txt").toString());
+        baseline = readLines(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        appendStore.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return store.contains(hits[next++ & (hits.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return store.contains("Album_x/IMG_" + (next++) + ".jpg");
+    }
+
+    @Benchmark
+    public void add() {
+        appendStore.add("Album_new/IMG_" + (added++) + ".jpg");
+    }
+
+    /**
+     * Otevření celého souboru při startu programu.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void open() throws IOException {
+        ProgressStore.open(file.toString()).close();
+    }
+
+    @Benchmark
+    public boolean baselineContainsHit() {
+        return baseline.contains(hits[next++ & (hits.length - 1)]);
+    }
+
+    @Benchmark
+    public void baselineAdd() throws IOException {
+        writeLine(dir.resolve("append-baseline.txt"), "Album_new/IMG_" + (added++) + ".jpg");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TreeSet<String> baselineOpen() throws IOException {
+        return readLines(file);
+    }
+
+    // původní Utils.readLines
+    private static TreeSet<String> readLines(Path path) throws IOException {
+        TreeSet<String> lines = new TreeSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path.toFile()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // původní Utils.writeLine
+    private static void writeLine(Path path, String line) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path.toFile(), true))) {
+            writer.write(line);
+            writer.newLine();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package cz.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utils.sanitizeName na typických názvech alb a fotek.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SanitizeNameBenchmark {
+
+    private final String[] titles = {
+            "IMG_20190704_183512.jpg",
+            "Dovolená Šumava 2019 - den 3 (Železná Ruda)",
+            "Auto Upload",
+            "Výlet: Praha/Brno? \"nejlepší\" <foto> *1*",
+            "家族写真 🎉 2021",
+            "",
+    };
+    private int next;
+
+    @Benchmark
+    public String sanitize() {
+        return Utils.sanitizeName(titles[next++ % titles.length]);
+    }
+}
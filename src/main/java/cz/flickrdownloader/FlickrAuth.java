@@ -2,17 +2,103 @@ package cz.flickrdownloader;
 
 import com.flickr4java.flickr.Flickr;
 import com.flickr4java.flickr.REST;
+import com.flickr4java.flickr.RequestContext;
+import com.flickr4java.flickr.auth.Auth;
 import com.flickr4java.flickr.auth.Permission;
+import com.flickr4java.flickr.people.User;
 import cz.util.Utils;
 
 import javax.net.ssl.*;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.SecureRandom;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 public class FlickrAuth {
 
+    private static final long VERIFY_HOURS = Long.getLong("f2g.flickrAuthVerifyHours", 168);
+
+    /**
+     * Sestaví Flickr klienta s tokeny uloženými ve flickr.properties.
+     * Auth je nastavený i do RequestContextu volajícího vlákna.
+     */
+    public static Flickr connect(String apiKey, String apiSecret) throws Exception {
+        return connect(apiKey, apiSecret, Paths.get("flickr.properties"));
+    }
+
+    /**
+     * Jako connect, tokeny se čtou z daného souboru (každý účet má vlastní).
+     * <p>
+     * Ověřený uživatel (id, jméno) se uloží k tokenům, další běhy si Auth sestaví lokálně
+     * bez volání checkToken. Znovu se ověřuje po -Df2g.flickrAuthVerifyHours (výchozí 168)
+     * nebo když se tokeny změní (FlickrAuth.main zapíše soubor bez uloženého uživatele).
+     */
+    public static Flickr connect(String apiKey, String apiSecret, Path propertiesFile) throws Exception {
+        Flickr flickr = new Flickr(apiKey, apiSecret, new REST());
+
+        // načteme dříve uložené hodnoty
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(propertiesFile)) {
+            props.load(in);
+        }
+
+        String token = props.getProperty("oauth.token");
+        String tokenSecret = props.getProperty("oauth.tokenSecret");
+
+        Auth auth = cachedAuth(props);
+        if (auth == null) {
+            // znovu sestavíme Auth přes API a uživatele si zapamatujeme
+            auth = flickr.getAuthInterface()
+                    .checkToken(token, tokenSecret);
+            props.setProperty("oauth.userId", auth.getUser().getId());
+            props.setProperty("oauth.username", auth.getUser().getUsername());
+            props.setProperty("oauth.verifiedAt", Long.toString(System.currentTimeMillis()));
+            Path tmp = propertiesFile.resolveSibling(propertiesFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "Flickr OAuth tokeny");
+            }
+            Files.move(tmp, propertiesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        auth.setPermission(Permission.READ);
+        flickr.setAuth(auth);
+
+        RequestContext.getRequestContext().setAuth(auth);
+        return flickr;
+    }
+
+    /**
+     * Auth z uloženého ověření, null pokud chybí nebo je starší než VERIFY_HOURS.
+     */
+    private static Auth cachedAuth(Properties props) {
+        String userId = props.getProperty("oauth.userId");
+        String verifiedAt = props.getProperty("oauth.verifiedAt");
+        if (userId == null || verifiedAt == null) {
+            return null;
+        }
+        try {
+            if (System.currentTimeMillis() - Long.parseLong(verifiedAt) > TimeUnit.HOURS.toMillis(VERIFY_HOURS)) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        User user = new User();
+        user.setId(userId);
+        user.setUsername(props.getProperty("oauth.username"));
+        Auth auth = new Auth(Permission.READ, user);
+        auth.setToken(props.getProperty("oauth.token"));
+        auth.setTokenSecret(props.getProperty("oauth.tokenSecret"));
+        return auth;
+    }
+
     public static void main(String[] args) throws Exception {
 
         if (args.length != 2) {
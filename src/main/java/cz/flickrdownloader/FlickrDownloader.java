@@ -1,6 +1,8 @@
 package cz.flickrdownloader;
 
 import com.flickr4java.flickr.Flickr;
+import com.flickr4java.flickr.FlickrException;
+import com.flickr4java.flickr.FlickrRuntimeException;
 import com.flickr4java.flickr.REST;
 import com.flickr4java.flickr.RequestContext;
 import com.flickr4java.flickr.auth.Auth;
@@ -11,8 +13,18 @@ import com.flickr4java.flickr.photos.Size;
 import com.flickr4java.flickr.photosets.Photoset;
 import com.flickr4java.flickr.photosets.Photosets;
 import com.flickr4java.flickr.photosets.PhotosetsInterface;
-import com.google.common.util.concurrent.RateLimiter;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.Bandwidth;
+import cz.util.ContentIndex;
+import cz.util.DiskBudget;
+import cz.util.Http;
+import cz.util.ItemLog;
+import cz.util.Metrics;
+import cz.util.ProgressStore;
+import cz.util.SizeLanes;
+import cz.util.SyncMarks;
 import cz.util.Utils;
+import okhttp3.Request;
 
 import javax.net.ssl.*;
 import java.io.BufferedReader;
@@ -22,32 +34,50 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.file.*;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
-import java.util.concurrent.TimeUnit;
-
-import static cz.util.Utils.readLines;
-import static cz.util.Utils.writeLine;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FlickrDownloader {
 
     private static final int MAX_RETRIES = 10;
     private static final long BASE_BACKOFF = 1_000; // 1s základní backoff
-    private static final double DOWNLOAD_RATE = 1.0;   // permity za sekundu
+    private static final double DOWNLOAD_RATE = 1.0;   // počáteční permity za sekundu
+    private static final double MIN_RATE = 0.1;
+    private static final double MAX_RATE = 5.0;
+    private static final int DEFAULT_WORKERS = 8;      // počet souběžných stahování
+    private static final int PARALLEL_ALBUMS = Integer.getInteger("f2g.parallelAlbums", 4); // souběžně zpracovávaná alba
+    private static final int PHOTOSETS_PER_PAGE = 500;
+    private static final long LARGE_PIXELS = Long.getLong("f2g.largePhotoMegapixels", 50) * 1_000_000;
+    // volitelné limity rychlosti pruhů v MB/s, velká média tak nevytlačí malé fotky z linky
+    private static final Bandwidth SMALL_BANDWIDTH = SizeLanes.bandwidth(false);
+    private static final Bandwidth LARGE_BANDWIDTH = SizeLanes.bandwidth(true);
 
     private static final String ALBUMS_FILE = "downloaded_albums.txt"; // soubor pro uložení alb
     private static final String PHOTOS_FILE = "downloaded_photos.txt";
+    public static final String CONTENT_FILE = "downloaded_content.txt"; // id fotky -> SHA-256 a cesta "album/soubor"
+    private static final String MARKS_FILE = "downloaded_marks.properties"; // id alba -> date_update při posledním stažení
+    static final Metrics.Stage DOWNLOAD = Metrics.stage("download");
+
+    private static final String SOURCES_FILE = "album_sources.txt"; // adresář alba -> id photosetu pro GooglePhotosUploader
 
     public static void main(String[] args) throws Exception {
 
         if (args.length < 3) {
-            System.out.println("Pouziti: API_KEY, API_SECRET,  download directory path, [ignoreAutoUpload]");
+            System.out.println("Pouziti: API_KEY, API_SECRET,  download directory path, [ignoreAutoUpload], [workers]");
             System.exit(1);
         }
 
@@ -55,148 +85,496 @@ public class FlickrDownloader {
         var apiSecret = args[1];
         var downloadDir = args[2];
         var ingoreAutoUpload = args.length > 3 && Boolean.parseBoolean(args[3]);
+        var workers = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_WORKERS;
 
         Utils.ignoreCert(); // 1. (Test) Vypnutí validace SSL certifikátů
 
         // --- inicializace Flickr klienta a OAuth flow ---
-        Flickr flickr = new Flickr(apiKey, apiSecret, new REST());
+        Flickr flickr = FlickrAuth.connect(apiKey, apiSecret);
+        Auth auth = flickr.getAuth();
+
+        var userId = auth.getUser().getId();
+        System.out.println("Přihlášen jako: " + auth.getUser().getUsername() +
+                " (" + userId + "), perms=" + auth.getPermission());
+
+        // --- adaptivní limiter pro volání Flickr API, sdílený všemi workery ---
+        AdaptiveRateLimiter limiter = AdaptiveRateLimiter.create("Flickr API", DOWNLOAD_RATE, MIN_RATE, MAX_RATE);
 
-        // načteme dříve uložené hodnoty
-        Properties props = new Properties();
-        try (FileInputStream in = new FileInputStream("flickr.properties")) {
-            props.load(in);
+        Metrics.start();
+        try {
+            download(flickr, limiter, Paths.get(downloadDir), ingoreAutoUpload, workers, null, null);
+        } finally {
+            Metrics.stop();
+            ItemLog.flush();
         }
 
-        String token = props.getProperty("oauth.token");
-        String tokenSecret = props.getProperty("oauth.tokenSecret");
+        System.out.println("📊 " + limiter);
+        System.out.println("🎉 Hotovo!");
+    }
 
-        // znovu sestavíme Auth a nastavíme ho do RequestContextu
-        Auth auth = flickr.getAuthInterface()
-                .checkToken(token, tokenSecret);
-        auth.setPermission(Permission.READ);
-        flickr.setAuth(auth);
+    /**
+     * Stáhne všechna alba uživatele do downloadDir.
+     *
+     * @param budget   staging: před každou fotkou se čeká na místo, null = bez limitu
+     * @param uploaded staging: soubory už nahrané a smazané uploaderem ("album/soubor"), null = bez stagingu
+     */
+    public static void download(Flickr flickr, AdaptiveRateLimiter limiter, Path downloadDir, boolean ignoreAutoUpload,
+                                int workers, DiskBudget budget, ProgressStore uploaded) throws Exception {
+        Auth auth = flickr.getAuth();
+
+        // --- načtení všech alb (po stránkách) ---
+        List<Photoset> sets = listPhotosets(flickr, limiter, auth.getUser().getId());
+        System.out.println("Nalezeno alb: " + sets.size());
+
+        var downloadedAlbums = ProgressStore.open(ALBUMS_FILE);
+        var downloadedPhotos = ProgressStore.open(PHOTOS_FILE);
+        var downloadedContent = ContentIndex.open(CONTENT_FILE);
+        var albumMarks = SyncMarks.open(MARKS_FILE);
+        var albumSources = ContentIndex.open(SOURCES_FILE);
+
+        // --- workery pro stahování (max. workers současně) - globální rozpočet pro všechna alba,
+        //     videa a obří fotky mají vlastní pruh, aby nezdržovaly malé fotky ---
+        SizeLanes lanes = new SizeLanes("download", workers);
+        // alba se zpracovávají souběžně, aby malá alba nečekala za obřím
+        ExecutorService albumExecutor = Executors.newFixedThreadPool(PARALLEL_ALBUMS, Thread.ofVirtual().name("album-", 0).factory());
+
+        PhotosetPages pages = new PhotosetPages(flickr, auth, limiter);
+        Session session = new Session(flickr, auth, limiter, pages, lanes, downloadedPhotos, downloadedContent,
+                downloadDir, budget, uploaded);
+
+        List<Future<AlbumResult>> albums = new ArrayList<>();
+        try {
+            for (Photoset set : sets) {
+                String albumTitle = Utils.sanitizeName(set.getTitle());
+                // inkrementálně: album se od posledního stažení nezměnilo (date_update),
+                // bez date_update rozhoduje jen seznam hotových alb jako dřív
+                String version = set.getDateUpdate();
+                boolean unchanged = version != null
+                        ? albumMarks.unchanged(set.getId(), version)
+                        : downloadedAlbums.contains(albumTitle);
+                if (unchanged) {
+                    // přeskočíme auto-upload album a uz nactena alba
+                    System.out.println("Album already exists: " + albumTitle);
+                    continue;
+                }
 
-        RequestContext.getRequestContext().setAuth(auth);
+                if (ignoreAutoUpload && "Auto_Upload".equals(albumTitle)) {
+                    System.out.println("⏭️ Přeskočeno: " + albumTitle + " (Auto_Upload)");
+                    continue;
+                }
 
-        var userId = auth.getUser().getId();
-        System.out.println("Přihlášen jako: " + auth.getUser().getUsername() +
-                " (" + userId + "), perms=" + auth.getPermission());
+                albumSources.put(albumTitle, set.getId());
+                albums.add(albumExecutor.submit(() -> {
+                    AlbumResult result = downloadAlbum(session, set);
+                    if (result.ok()) {
+                        downloadedAlbums.add(albumTitle);
+                        albumMarks.put(set.getId(), version);
+                    }
+                    return result;
+                }));
+            }
 
-        // --- načtení alb ---
-        PhotosetsInterface psi = flickr.getPhotosetsInterface();
-        Photosets sets = psi.getList(userId, 500, 1, null);
-
-        // --- RateLimiter pro stahování ---
-        RateLimiter limiter = RateLimiter.create(DOWNLOAD_RATE);
-
-        var downloadedAlbums = readLines(ALBUMS_FILE);
-        var downloadedPhotos = readLines(PHOTOS_FILE);
-
-        for (Photoset set : sets.getPhotosets()) {
-            var readingProblem = false;
-            String albumTitle = set.getTitle()
-                    .replaceAll("[^\\p{L}\\d_\\-\\.]", "_");
-            if (downloadedAlbums.contains(albumTitle)) {
-                // přeskočíme auto-upload album a uz nactena alba
-                System.out.println("Album already exists: " + albumTitle);
-                continue;
+            // --- souhrn po albech ---
+            int failedAlbums = 0;
+            System.out.println("📋 Souhrn:");
+            for (Future<AlbumResult> album : albums) {
+                AlbumResult result = album.get();
+                System.out.println("  " + result);
+                if (!result.ok()) {
+                    failedAlbums++;
+                }
+            }
+            if (failedAlbums > 0) {
+                System.err.println("⚠️ Nedokončená alba: " + failedAlbums + " z " + albums.size()
+                        + ", doběhnou při dalším spuštění");
             }
+        } finally {
+            albumExecutor.shutdown();
+            lanes.close();
+            downloadedPhotos.close();
+            downloadedAlbums.close();
+            downloadedContent.close();
+            albumSources.close();
+        }
+    }
+
+    /**
+     * Sdílený stav běhu, který potřebuje zpracování každého alba.
+     */
+    private record Session(Flickr flickr, Auth auth, AdaptiveRateLimiter limiter, PhotosetPages pages,
+                           SizeLanes lanes, ProgressStore downloadedPhotos, ContentIndex downloadedContent,
+                           Path downloadDir, DiskBudget budget, ProgressStore uploaded) {
+    }
+
+    /**
+     * Výsledek zpracování jednoho alba pro závěrečný souhrn.
+     */
+    private record AlbumResult(String title, int total, int downloaded, int linked, int failed, String error) {
+        boolean ok() {
+            return failed == 0 && error == null;
+        }
+
+        @Override
+        public String toString() {
+            String counts = total + " fotek, staženo " + downloaded + ", nalinkováno " + linked;
+            if (error != null) {
+                return "❌ " + title + ": " + error + " (" + counts + ")";
+            }
+            return (failed > 0 ? "❌ " : "✅ ") + title + ": " + counts + (failed > 0 ? ", chyb " + failed : "");
+        }
+    }
 
-            if (ingoreAutoUpload && "Auto_Upload".equals(albumTitle)) {
-                System.out.println("⏭️ Přeskočeno: " + albumTitle + " (Auto_Upload)");
-                continue;
+    /**
+     * Načte všechna alba uživatele, getList vrací nanejvýš 500 alb na stránku.
+     */
+    public static List<Photoset> listPhotosets(Flickr flickr, AdaptiveRateLimiter limiter, String userId) throws Exception {
+        PhotosetsInterface psi = flickr.getPhotosetsInterface();
+        List<Photoset> all = new ArrayList<>();
+        for (int page = 1; ; page++) {
+            int current = page;
+            Photosets sets = callApi(limiter, () -> psi.getList(userId, PHOTOSETS_PER_PAGE, current, null));
+            all.addAll(sets.getPhotosets());
+            // pokud odpověď neobsahuje počet stránek, končíme na první neplné stránce
+            boolean hasNext = sets.getPages() > 0
+                    ? page < sets.getPages()
+                    : sets.getPhotosets().size() == PHOTOSETS_PER_PAGE;
+            if (!hasNext) {
+                return all;
             }
+        }
+    }
 
-            Path albumPath = Paths.get(downloadDir, albumTitle);
+    /**
+     * Stáhne jedno album. Fotky jdou do sdíleného poolu workerů, album ale smí mít v každém pruhu
+     * rozpracovaných nanejvýš tolik fotek, kolik pruh běží souběžně - velké album tak neucpe frontu
+     * ostatním a řada videí v albu nezablokuje jeho fotky.
+     */
+    private static AlbumResult downloadAlbum(Session session, Photoset set) throws InterruptedException {
+        String albumTitle = Utils.sanitizeName(set.getTitle());
+        AtomicInteger total = new AtomicInteger();
+        AtomicInteger downloaded = new AtomicInteger();
+        AtomicInteger linked = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Semaphore smallInFlight = new Semaphore(session.lanes().slots(false));
+        Semaphore largeInFlight = new Semaphore(session.lanes().slots(true));
+        List<Future<?>> tasks = new ArrayList<>();
+        String error = null;
+
+        try {
+            Path albumPath = session.downloadDir().resolve(albumTitle);
             Files.createDirectories(albumPath);
             System.out.println("📁 Stahuji album: " + albumTitle);
 
-            var perPage = 500;
-            // Zjištění počtu stránek
-            var info = psi.getInfo(set.getId());
-            int pages = info.getPhotoCount() / perPage + 1;
-
-            for (int page = 1; page <= pages; page++) {
-                var photos = psi.getPhotos(set.getId(), perPage, page);
-                for (Photo photo : photos) {
+            session.pages().forEachPhoto(set.getId(), session.pages().fetch(set.getId(), 1), photo -> {
+                total.incrementAndGet();
+                if (session.downloadedPhotos().contains(photo.getId()) && !stagedAway(session, photo, albumPath)) {
+                    // už stažená fotka (třeba v jiném albu) - do tohoto alba jen nalinkujeme existující soubor
+                    if (linkDuplicate(session.downloadDir(), session.downloadedContent(), session.budget(), photo, albumPath)) {
+                        linked.incrementAndGet();
+                    } else {
+                        ItemLog.info("  ⏭️ Přeskočeno: " + photo.getTitle() + " (" + photo.getId() + ")");
+                    }
+                    return;
+                }
 
-                    if (downloadedPhotos.contains(photo.getId())) {
-                        System.out.println("  ⏭️ Přeskočeno: " + photo.getTitle() + " (" + photo.getId() + ")");
-                        continue; // přeskočíme již stažené fotky
+                DOWNLOAD.discovered();
+                if (session.budget() != null) {
+                    try {
+                        session.budget().awaitRoom(); // staging plný - počkáme, až upload uvolní místo
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt(); // task.get() níž přerušení pošle dál
+                        throw new CancellationException("Stahování přerušeno");
+                    }
+                }
+                boolean large = isLarge(photo);
+                Semaphore inFlight = large ? largeInFlight : smallInFlight;
+                inFlight.acquireUninterruptibly();
+                FutureTask<Void> task = new FutureTask<>(() -> {
+                    try {
+                        if (downloadPhoto(session.flickr(), session.auth(), session.limiter(),
+                                session.downloadedPhotos(), session.downloadedContent(), session.budget(),
+                                large ? LARGE_BANDWIDTH : SMALL_BANDWIDTH, photo, albumPath)) {
+                            downloaded.incrementAndGet();
+                            DOWNLOAD.done();
+                        } else {
+                            failed.incrementAndGet();
+                            DOWNLOAD.failed();
+                        }
+                    } catch (Exception e) {
+                        System.err.println("  ❌ Chyba workeru: " + e);
+                        failed.incrementAndGet();
+                        DOWNLOAD.failed();
+                    } finally {
+                        inFlight.release();
                     }
+                    return null;
+                });
+                tasks.add(task);
+                session.lanes().lane(large).execute(task);
+            });
+        } catch (Exception e) {
+            // album se nepodařilo projít celé - co už běží, necháme doběhnout
+            System.err.println("❌ Chyba alba " + albumTitle + ": " + e.getMessage());
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+
+        // album je hotové až po doběhnutí všech workerů, které pro něj běží
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                failed.incrementAndGet();
+            }
+        }
+        return new AlbumResult(albumTitle, total.get(), downloaded.get(), linked.get(), failed.get(), error);
+    }
+
+    /**
+     * Velké médium podle metadat z extras: video (velikost v bajtech Flickr neuvádí), nebo fotka
+     * originálu nad -Df2g.largePhotoMegapixels (výchozí 50) - panoramata a skeny.
+     */
+    public static boolean isLarge(Photo photo) {
+        if ("video".equals(photo.getMedia())) {
+            return true;
+        }
+        Size original = photo.getOriginalSize();
+        return original != null && (long) original.getWidth() * original.getHeight() > LARGE_PIXELS;
+    }
+
+    /**
+     * Se stagingem uploader nahrané soubory maže. Duplicitu v dalším albu pak není z čeho
+     * nalinkovat a fotka se musí stáhnout znovu - pokud ji v tomto albu uploader už nemá.
+     */
+    private static boolean stagedAway(Session session, Photo photo, Path albumPath) {
+        if (session.uploaded() == null) {
+            return false;
+        }
+        String entry = session.downloadedContent().get(photo.getId());
+        if (entry == null || Files.exists(session.downloadDir().resolve(entry.substring(entry.indexOf('\t') + 1)))) {
+            return false;
+        }
+        String target = albumPath.getFileName() + "/" + fileName(photo);
+        return !session.uploaded().contains(target) && !Files.exists(albumPath.resolve(fileName(photo)));
+    }
+
+    /**
+     * Zpřístupní už staženou fotku i v dalším albu - hard linkem, kde to souborový systém
+     * neumí, kopií. Zdrojový soubor se hledá v obsahovém indexu podle id fotky.
+     *
+     * @param budget staging, kopie i hard link se započítá celou velikostí (smaže se každý zvlášť), může být null
+     * @return false pokud v albu soubor už je nebo o fotce index nic neví
+     */
+    private static boolean linkDuplicate(Path downloadDir, ContentIndex content, DiskBudget budget,
+                                         Photo photo, Path albumPath) {
+        String entry = content.get(photo.getId());
+        if (entry == null) {
+            return false; // staženo starší verzí bez indexu
+        }
+        Path source = downloadDir.resolve(entry.substring(entry.indexOf('\t') + 1));
+        Path target = albumPath.resolve(source.getFileName());
+        if (Files.exists(target) || !Files.exists(source)) {
+            return false;
+        }
+        try {
+            if (budget != null) {
+                budget.add(target, Files.size(source)); // dřív, než soubor uvidí a smaže upload
+            }
+            try {
+                Files.createLink(target, source);
+            } catch (UnsupportedOperationException | IOException e) {
+                // kopie vzniká pod dočasným jménem, souběžný upload ze stagingu nesmí vidět půlku souboru
+                Path tmp = albumPath.resolve(target.getFileName() + ".tmp");
+                Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            ItemLog.info("  🔗 Duplicita z " + source.getParent().getFileName() + ": " + target.getFileName());
+            return true;
+        } catch (IOException e) {
+            System.err.println("  ❌ Nelze nalinkovat " + source + ": " + e.getMessage());
+            if (budget != null) {
+                budget.discharge(target); // soubor nevznikl, upload ho neuvolní
+            }
+            return false;
+        }
+    }
 
-                    limiter.acquire(); // dodržujeme max DOWNLOAD_RATE
+    /**
+     * Najde URL originálu fotky. U fotek ji většinou známe už z extras url_o,
+     * jinak (a vždy u videa, kde url_o je jen náhled) se ptáme přes getSizes.
+     */
+    public static Optional<String> originalUrl(Flickr flickr, AdaptiveRateLimiter limiter, Photo photo) throws Exception {
+        Size prefetched = photo.getOriginalSize();
+        if ("photo".equals(photo.getMedia()) && prefetched != null && prefetched.getSource() != null) {
+            return Optional.of(prefetched.getSource());
+        }
+        return callApi(limiter, () -> originalUrl(flickr, photo));
+    }
 
-                    Collection<Size> sizes = flickr.getPhotosInterface().getSizes(photo.getId());
+    /**
+     * Najde URL originálu fotky, u videa "Video Original".
+     */
+    public static Optional<String> originalUrl(Flickr flickr, Photo photo) throws FlickrException {
+        Collection<Size> sizes = flickr.getPhotosInterface().getSizes(photo.getId());
 
-                    var size = sizes.stream().filter(s -> (s.getMedia() == Media.photo && s.getLabelName().equals("Original")) ||
-                            s.getMedia() == Media.video && s.getLabelName().equals("Video Original")).max(Comparator.comparingInt(Size::getLabel));
+        return sizes.stream().filter(s -> (s.getMedia() == Media.photo && s.getLabelName().equals("Original")) ||
+                        s.getMedia() == Media.video && s.getLabelName().equals("Video Original"))
+                .max(Comparator.comparingInt(Size::getLabel))
+                .map(Size::getSource);
+    }
 
-                    String photoUrl = size.get().getSource();
+    /**
+     * Bezpečný název souboru pro fotku - z titulku, případně z id, s příponou originálu.
+     */
+    public static String fileName(Photo photo) {
+        String baseName = Utils.sanitizeName(photo.getTitle());
 
-                    String baseName = photo.getTitle()
-                            .replaceAll("[^\\p{L}\\d_\\-\\.]", "_");
+        baseName = baseName.isEmpty() ? "photo_" + photo.getId() : baseName;
 
-                    baseName = baseName.isEmpty() ? "photo_" + photo.getId() : baseName;
+        String suffix =
+                baseName.toLowerCase().endsWith(".jpg") ||
+                        baseName.toLowerCase().endsWith(".jpeg") ||
+                        baseName.toLowerCase().endsWith(".png") ||
+                        baseName.toLowerCase().endsWith(".mov") ? "" : "." + photo.getOriginalFormat();
 
-                    String suffix =
-                            baseName.toLowerCase().endsWith(".jpg") ||
-                                    baseName.toLowerCase().endsWith(".jpeg") ||
-                                    baseName.toLowerCase().endsWith(".png") ||
-                                    baseName.toLowerCase().endsWith(".mov") ? "" : "." + photo.getOriginalFormat();
+        return baseName + suffix;
+    }
 
-                    String fileName = baseName + suffix;
-                    Path filePath = albumPath.resolve(fileName);
+    /**
+     * Volání Flickr API, které může selhat na throttlingu.
+     */
+    @FunctionalInterface
+    public interface FlickrCall<T> {
+        T call() throws FlickrException;
+    }
 
+    /**
+     * Zavolá Flickr API přes sdílený limiter. Úspěch limiter zrychlí, 429 ho zpomalí,
+     * pozastaví všechny workery a volání se zopakuje.
+     */
+    public static <T> T callApi(AdaptiveRateLimiter limiter, FlickrCall<T> call) throws Exception {
+        long backoff = BASE_BACKOFF;
+        for (int attempt = 1; ; attempt++) {
+            limiter.acquire();
+            long start = System.nanoTime();
+            try {
+                T result = call.call();
+                Metrics.latency("flickr").since(start);
+                limiter.onSuccess();
+                return result;
+            } catch (FlickrException | FlickrRuntimeException e) {
+                if (attempt >= MAX_RETRIES || e.getMessage() == null || !e.getMessage().contains("429")) {
+                    throw e;
+                }
+                limiter.onThrottle(backoff);
+                backoff *= 2;
+            }
+        }
+    }
 
-                    boolean success = false;
-                    long backoff = BASE_BACKOFF;
+    /**
+     * Stáhne jednu fotku do adresáře alba. Volání Flickr API jde přes sdílený limiter,
+     * samotný přenos dat z CDN už limitovaný není, jen respektuje globální pauzu po 429.
+     *
+     * @return true pokud se fotku podařilo stáhnout
+     */
+    static boolean downloadPhoto(Flickr flickr, Auth auth, AdaptiveRateLimiter limiter,
+                                 ProgressStore downloadedPhotos, ContentIndex downloadedContent,
+                                 Photo photo, Path albumPath) throws Exception {
+        return downloadPhoto(flickr, auth, limiter, downloadedPhotos, downloadedContent, null, null, photo, albumPath);
+    }
 
-                    for (int attempt = 1; attempt <= MAX_RETRIES && !success; attempt++) {
-                        HttpURLConnection conn = (HttpURLConnection) new URL(photoUrl).openConnection();
-                        conn.setRequestProperty("User-Agent", "cz.flickrdownloader.FlickrDownloader/1.0");
-                        conn.setConnectTimeout(10_000);
-                        conn.setReadTimeout(10_000);
+    /**
+     * @param budget    staging, hotový soubor se započítá před přesunem z .part, může být null
+     * @param bandwidth limit rychlosti pruhu, null = bez limitu
+     */
+    static boolean downloadPhoto(Flickr flickr, Auth auth, AdaptiveRateLimiter limiter,
+                                 ProgressStore downloadedPhotos, ContentIndex downloadedContent, DiskBudget budget,
+                                 Bandwidth bandwidth, Photo photo, Path albumPath) throws Exception {
+        // RequestContext je ThreadLocal, každý worker si musí auth nastavit sám
+        RequestContext.getRequestContext().setAuth(auth);
 
-                        int code = conn.getResponseCode();
-                        if (code == 200) {
-                            try (InputStream in = conn.getInputStream()) {
-                                Files.copy(in, filePath, StandardCopyOption.REPLACE_EXISTING);
-                            }
-                            System.out.println("  ✅ Staženo: " + fileName);
-                            success = true;
-                            writeLine(PHOTOS_FILE, photo.getId());
+        Optional<String> originalUrl;
+        try {
+            originalUrl = originalUrl(flickr, limiter, photo);
+        } catch (FlickrException | FlickrRuntimeException e) {
+            System.err.println("  ❌ Nelze načíst velikosti " + photo.getId() + ": " + e.getMessage());
+            return false;
+        }
 
-                        } else if (code == 429) {
-                            // Too Many Requests
-                            String retryAfter = conn.getHeaderField("Retry-After");
-                            long wait = retryAfter != null
-                                    ? TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter))
-                                    : backoff;
-                            System.err.println("  ⚠️ 429, čekám " + wait + " ms a zkouším znovu ("
-                                    + attempt + "/" + MAX_RETRIES + ") " + fileName);
-                            Thread.sleep(wait);
-                            backoff *= 2; // exponenciální backoff
+        if (originalUrl.isEmpty()) {
+            System.err.println("  ❌ Originál nenalezen: " + photo.getId());
+            return false;
+        }
 
-                        } else {
-                            System.err.println("  ❌ HTTP " + code + " při stahování " + photoUrl + " " + fileName);
-                            break;
-                        }
+        String photoUrl = originalUrl.get();
+        String fileName = fileName(photo);
+        Path filePath = albumPath.resolve(fileName);
+
+
+        boolean success = false;
+        long backoff = BASE_BACKOFF;
+
+        Request request = new Request.Builder()
+                .url(photoUrl)
+                .header("User-Agent", "cz.flickrdownloader.FlickrDownloader/1.0")
+                .build();
+        // data jdou nejdřív do .part souboru, hotový soubor vznikne až atomickým přejmenováním;
+        // .part z přerušeného pokusu se dotahuje přes HTTP Range
+        Path partPath = albumPath.resolve(fileName + ".part");
+
+        for (int attempt = 1; attempt <= MAX_RETRIES && !success; attempt++) {
+            limiter.awaitPause();
+
+            try {
+                // naváže na případný .part z předchozího pokusu nebo běhu
+                RangedDownload.Outcome outcome = RangedDownload.fetch(request, partPath, bandwidth);
+                int code = outcome.code();
+                if (code == 200) {
+                    // hash se počítá za běhu, jen u navázaného nebo segmentovaného stažení se čte .part znovu
+                    String sha256 = outcome.sha256() != null ? outcome.sha256() : Utils.sha256(partPath);
+                    if (budget != null) {
+                        budget.add(filePath, Files.size(partPath)); // dřív, než soubor uvidí a smaže upload
                     }
-
-                    if (!success) {
-                        System.err.println("  ❌ Nezdařilo se stáhnout po " +
-                                MAX_RETRIES + " pokusech: " + photoUrl);
-                        readingProblem = true;
+                    try {
+                        Files.move(partPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException e) {
+                        if (budget != null) {
+                            budget.discharge(filePath); // zůstal jen .part, upload ho nevidí
+                        }
+                        throw e;
                     }
+                    ItemLog.info("  ✅ Staženo: " + fileName);
+                    success = true;
+                    downloadedContent.put(photo.getId(), sha256 + "\t" + albumPath.getFileName() + "/" + fileName);
+                    downloadedPhotos.add(photo.getId());
+
+                } else if (code == 429) {
+                    // Too Many Requests
+                    long wait = AdaptiveRateLimiter.parseRetryAfter(outcome.retryAfter(), backoff);
+                    System.err.println("  ⚠️ 429, čekám " + wait + " ms a zkouším znovu ("
+                            + attempt + "/" + MAX_RETRIES + ") " + fileName);
+                    limiter.onThrottle(wait); // pozdrží i ostatní workery
+                    DOWNLOAD.retry();
+                    backoff *= 2; // exponenciální backoff
+
+                } else {
+                    System.err.println("  ❌ HTTP " + code + " při stahování " + photoUrl + " " + fileName);
+                    break;
                 }
-            }
-            if (!readingProblem) {
-                writeLine(ALBUMS_FILE, albumTitle);
+            } catch (IOException e) {
+                // timeout nebo spadlé spojení - další pokus naváže na už stažená data
+                System.err.println("  ⚠️ " + e.getMessage() + " (" + attempt + "/" + MAX_RETRIES + ") " + fileName);
+                DOWNLOAD.retry();
+                Thread.sleep(backoff);
+                backoff *= 2;
             }
         }
 
-        System.out.println("🎉 Hotovo!");
+        if (!success) {
+            System.err.println("  ❌ Nezdařilo se stáhnout po " +
+                    MAX_RETRIES + " pokusech: " + photoUrl);
+        }
+        return success;
     }
 
 }
@@ -0,0 +1,95 @@
+package cz.flickrdownloader;
+
+import com.flickr4java.flickr.Flickr;
+import com.flickr4java.flickr.RequestContext;
+import com.flickr4java.flickr.auth.Auth;
+import com.flickr4java.flickr.photos.Photo;
+import com.flickr4java.flickr.photos.PhotoList;
+import cz.util.AdaptiveRateLimiter;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Stránkování fotek alba přes photosets.getPhotos s extras, takže URL originálu,
+ * formát i typ média přijdou rovnou se seznamem a fotky nepotřebují getSizes.
+ * Další stránka se načítá na pozadí, zatímco se zpracovává ta aktuální.
+ */
+public class PhotosetPages {
+
+    static final Set<String> EXTRAS = Set.of("url_o", "original_format", "media");
+    public static final int PER_PAGE = 500;
+
+    private final Flickr flickr;
+    private final Auth auth;
+    private final AdaptiveRateLimiter limiter;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PhotosetPages(Flickr flickr, Auth auth, AdaptiveRateLimiter limiter) {
+        this.flickr = flickr;
+        this.auth = auth;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Začne na pozadí načítat stránku alba.
+     */
+    public CompletableFuture<PhotoList<Photo>> fetch(String setId, int page) {
+        return CompletableFuture.supplyAsync(() -> {
+            RequestContext.getRequestContext().setAuth(auth);
+            try {
+                return FlickrDownloader.callApi(limiter, () ->
+                        flickr.getPhotosetsInterface().getPhotos(setId, EXTRAS, 0, PER_PAGE, page));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Projde všechny fotky alba, stránku page+1 přitom načítá dopředu.
+     *
+     * @param firstPage dříve spuštěné načítání první stránky
+     */
+    public void forEachPhoto(String setId, CompletableFuture<PhotoList<Photo>> firstPage,
+                             Consumer<Photo> action) throws Exception {
+        forEachPhoto(setId, 1, Integer.MAX_VALUE, firstPage, action);
+    }
+
+    /**
+     * Projde jen stránky fromPage..toPage alba (část alba při rozdělení mezi víc uzlů).
+     *
+     * @param fromPageFuture dříve spuštěné načítání stránky fromPage
+     */
+    public void forEachPhoto(String setId, int fromPage, int toPage, CompletableFuture<PhotoList<Photo>> fromPageFuture,
+                             Consumer<Photo> action) throws Exception {
+        CompletableFuture<PhotoList<Photo>> current = fromPageFuture;
+        for (int page = fromPage; ; page++) {
+            PhotoList<Photo> photos = await(current);
+            boolean hasNext = page < photos.getPages() && page < toPage;
+            if (hasNext) {
+                current = fetch(setId, page + 1);
+            }
+            photos.forEach(action);
+            if (!hasNext) {
+                return;
+            }
+        }
+    }
+
+    private static PhotoList<Photo> await(CompletableFuture<PhotoList<Photo>> page) throws Exception {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package cz.flickrdownloader;
+
+import cz.util.Bandwidth;
+import cz.util.FileIO;
+import cz.util.Http;
+import cz.util.ItemLog;
+import cz.util.Utils;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stažení originálu do .part souboru s možností navázat po přerušení.
+ * <p>
+ * Vedle .part leží .part.meta s ETag/Last-Modified a očekávanou délkou. Další pokus
+ * pošle Range od aktuální délky .part s If-Range, takže se při změně souboru na serveru
+ * stahuje znovu od nuly. Velké soubory (-Df2g.segmentThreshold, výchozí 512 MB) se stahují
+ * paralelně po segmentech (-Df2g.segments, výchozí 4), každý segment navazuje samostatně.
+ */
+class RangedDownload {
+
+    private static final long SEGMENT_THRESHOLD = Long.getLong("f2g.segmentThreshold", 512L * 1024 * 1024);
+    private static final int SEGMENTS = Integer.getInteger("f2g.segments", 4);
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /**
+     * Výsledek pokusu: 200 = .part je kompletní, jinak HTTP kód serveru.
+     * sha256 je vyplněné, pokud se celý soubor stáhl jedním proudem a hash šel spočítat za běhu.
+     */
+    record Outcome(int code, String retryAfter, String sha256) {
+    }
+
+    /**
+     * Stáhne (nebo dotáhne) soubor do partPath.
+     *
+     * @param bandwidth limit rychlosti pruhu (SizeLanes), null = bez limitu
+     * @throws IOException při přerušení přenosu; stažená data zůstanou a další volání naváže
+     */
+    static Outcome fetch(Request request, Path partPath, Bandwidth bandwidth) throws IOException, InterruptedException {
+        Path metaPath = metaPath(partPath);
+        Properties meta = readMeta(metaPath);
+
+        if (meta.containsKey("segments")) {
+            fetchSegments(request, partPath, meta, bandwidth);
+            return new Outcome(200, null, null);
+        }
+
+        long existing = meta.containsKey("validator") && Files.exists(partPath) ? Files.size(partPath) : 0;
+        Request.Builder builder = request.newBuilder();
+        if (existing > 0) {
+            builder.header("Range", "bytes=" + existing + "-")
+                    .header("If-Range", meta.getProperty("validator"));
+        }
+
+        String sha256 = null;
+        boolean segmented = false;
+        try (Response response = Http.client().newCall(builder.build()).execute()) {
+            int code = response.code();
+            long expected;
+
+            if (code == 206) {
+                Matcher range = contentRange(response);
+                if (Long.parseLong(range.group(1)) != existing) {
+                    throw new IOException("Server vrátil jiný rozsah: " + response.header("Content-Range"));
+                }
+                expected = Long.parseLong(meta.getProperty("length", "-1"));
+                ItemLog.info("  ↪️ Navazuji od " + existing + " B: " + partPath.getFileName());
+                append(response, partPath, true, null, bandwidth);
+
+            } else if (code == 200) {
+                expected = response.body().contentLength();
+                String validator = validator(response);
+
+                if (expected > SEGMENT_THRESHOLD && SEGMENTS > 1 && validator != null
+                        && "bytes".equals(response.header("Accept-Ranges"))) {
+                    // velký soubor - tuto odpověď zahodíme a stáhneme ho po segmentech (až za try,
+                    // po zavření odpovědi, aby segmenty nedržely spojení s nepřečteným tělem)
+                    meta.setProperty("validator", validator);
+                    meta.setProperty("length", Long.toString(expected));
+                    meta.setProperty("segments", Integer.toString(SEGMENTS));
+                    writeMeta(metaPath, meta);
+                    segmented = true;
+                } else {
+                    // celý soubor od začátku (první pokus, nebo se soubor na serveru změnil)
+                    Properties fresh = new Properties();
+                    if (validator != null) {
+                        fresh.setProperty("validator", validator);
+                        fresh.setProperty("length", Long.toString(expected));
+                    }
+                    writeMeta(metaPath, fresh);
+                    MessageDigest digest = Utils.sha256Digest();
+                    append(response, partPath, false, digest, bandwidth);
+                    sha256 = HexFormat.of().formatHex(digest.digest());
+                }
+
+            } else if (code == 416) {
+                // rozsah za koncem souboru - .part je buď kompletní, nebo neplatný
+                if (Long.toString(existing).equals(unsatisfiedLength(response))) {
+                    Files.deleteIfExists(metaPath);
+                    return new Outcome(200, null, null);
+                }
+                Files.deleteIfExists(partPath);
+                Files.deleteIfExists(metaPath);
+                throw new IOException("Neplatný rozsah, stahuji znovu od začátku");
+
+            } else {
+                return new Outcome(code, response.header("Retry-After"), null);
+            }
+
+            if (!segmented && expected >= 0 && Files.size(partPath) != expected) {
+                throw new IOException("Neúplný přenos " + Files.size(partPath) + "/" + expected + " B");
+            }
+        }
+
+        if (segmented) {
+            fetchSegments(request, partPath, meta, bandwidth);
+            return new Outcome(200, null, null);
+        }
+        Files.deleteIfExists(metaPath);
+        return new Outcome(200, null, sha256);
+    }
+
+    /**
+     * Paralelní stažení po segmentech do partPath.0..n-1, poté spojení do partPath.
+     */
+    private static void fetchSegments(Request request, Path partPath, Properties meta, Bandwidth bandwidth)
+            throws IOException, InterruptedException {
+        long length = Long.parseLong(meta.getProperty("length"));
+        int segments = Integer.parseInt(meta.getProperty("segments"));
+        String validator = meta.getProperty("validator");
+        long segmentSize = (length + segments - 1) / segments;
+
+        ItemLog.info("  ⏬ Stahuji po " + segments + " segmentech (" + length + " B): " + partPath.getFileName());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < segments; i++) {
+                long start = i * segmentSize;
+                long end = Math.min(length, start + segmentSize) - 1;
+                Path segmentPath = segmentPath(partPath, i);
+                tasks.add(executor.submit(() -> {
+                    fetchSegment(request, validator, segmentPath, start, end, bandwidth);
+                    return null;
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof ChangedOnServerException) {
+                        // soubor se na serveru změnil - rozpracované segmenty jsou k ničemu
+                        discardSegments(partPath, segments);
+                    }
+                    if (e.getCause() instanceof IOException io) {
+                        throw io;
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        }
+
+        // spojení segmentů do .part
+        try (FileChannel out = FileChannel.open(partPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < segments; i++) {
+                try (FileChannel in = FileChannel.open(segmentPath(partPath, i), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+        if (Files.size(partPath) != length) {
+            discardSegments(partPath, segments);
+            throw new IOException("Neúplný přenos " + Files.size(partPath) + "/" + length + " B");
+        }
+        discardSegments(partPath, segments);
+    }
+
+    private static void discardSegments(Path partPath, int segments) throws IOException {
+        for (int i = 0; i < segments; i++) {
+            Files.deleteIfExists(segmentPath(partPath, i));
+        }
+        Files.deleteIfExists(metaPath(partPath));
+    }
+
+    /**
+     * Server na Range + If-Range odpověděl celým souborem - obsah se mezitím změnil.
+     */
+    private static class ChangedOnServerException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ChangedOnServerException(String message) {
+            super(message);
+        }
+    }
+
+    private static void fetchSegment(Request request, String validator, Path segmentPath,
+                                     long start, long end, Bandwidth bandwidth) throws IOException {
+        long existing = Files.exists(segmentPath) ? Files.size(segmentPath) : 0;
+        long expected = end - start + 1;
+        if (existing == expected) {
+            return;
+        }
+
+        Request ranged = request.newBuilder()
+                .header("Range", "bytes=" + (start + existing) + "-" + end)
+                .header("If-Range", validator)
+                .build();
+        try (Response response = Http.client().newCall(ranged).execute()) {
+            if (response.code() == 200) {
+                throw new ChangedOnServerException("Soubor se na serveru změnil: " + segmentPath.getFileName());
+            }
+            if (response.code() != 206) {
+                throw new IOException("HTTP " + response.code() + " pro segment " + segmentPath.getFileName());
+            }
+            append(response, segmentPath, true, null, bandwidth);
+        }
+        if (Files.size(segmentPath) != expected) {
+            throw new IOException("Neúplný segment " + segmentPath.getFileName());
+        }
+    }
+
+    /**
+     * Zapíše tělo odpovědi do souboru přes direct buffer, volitelně s průběžným výpočtem hashe.
+     */
+    private static void append(Response response, Path target, boolean append, MessageDigest digest,
+                               Bandwidth bandwidth) throws IOException {
+        try (BufferedSource in = bandwidth == null
+                ? response.body().source()
+                : Okio.buffer(Bandwidth.limit(bandwidth, response.body().source()));
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            FlickrDownloader.DOWNLOAD.bytes(FileIO.copy(in, out, digest));
+        }
+    }
+
+    private static Matcher contentRange(Response response) throws IOException {
+        String header = response.header("Content-Range");
+        Matcher matcher = CONTENT_RANGE.matcher(header != null ? header : "");
+        if (!matcher.matches()) {
+            throw new IOException("Neplatná hlavička Content-Range: " + header);
+        }
+        return matcher;
+    }
+
+    private static String unsatisfiedLength(Response response) {
+        String header = response.header("Content-Range"); // "bytes */1234"
+        return header != null && header.startsWith("bytes */") ? header.substring(8) : "*";
+    }
+
+    private static String validator(Response response) {
+        String etag = response.header("ETag");
+        // slabý ETag se pro If-Range použít nesmí
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return response.header("Last-Modified");
+    }
+
+    private static Path metaPath(Path partPath) {
+        return partPath.resolveSibling(partPath.getFileName() + ".meta");
+    }
+
+    private static Path segmentPath(Path partPath, int index) {
+        return partPath.resolveSibling(partPath.getFileName() + "." + index);
+    }
+
+    private static Properties readMeta(Path metaPath) throws IOException {
+        Properties meta = new Properties();
+        if (Files.exists(metaPath)) {
+            try (InputStream in = Files.newInputStream(metaPath)) {
+                meta.load(in);
+            }
+        }
+        return meta;
+    }
+
+    private static void writeMeta(Path metaPath, Properties meta) throws IOException {
+        try (OutputStream out = Files.newOutputStream(metaPath)) {
+            meta.store(out, "Rozpracované stahování");
+        }
+    }
+}
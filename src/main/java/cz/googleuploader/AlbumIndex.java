@@ -0,0 +1,181 @@
+package cz.googleuploader;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.proto.CreateAlbumRequest;
+import com.google.photos.library.v1.proto.ListAlbumsRequest;
+import com.google.photos.types.proto.Album;
+import cz.util.ContentIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lokální index alb: zdroj (id photosetu, adresář) -> id alba v Google Photos a čas
+ * posledního ověření. Opakovaný běh tak nepotřebuje listAlbums vůbec - seznam alb se
+ * načte až při prvním neznámém zdroji. Album se po uplynutí VERIFY_INTERVAL ověří
+ * přes getAlbum, smazané album se založí znovu.
+ * <p>
+ * Klíčem je zdroj, ne název, takže dvě alba se stejným názvem se nepřepíšou.
+ * <p>
+ * Alba se řeší souběžně: každý zdroj má vlastní rozpracované vyhledání (ostatní na něj
+ * čekají), přiřazení existujícího alba nebo založení nového se serializuje jen pro stejný
+ * název. Síťová volání tak nedrží zámek celého indexu.
+ * <p>
+ * Členství fotek v albech index nedrží - co tento nástroj do alba přidal, je v progress
+ * souborech (uploaded_files.txt, transferred_photos.txt) a opakovaný běh proto obsah alb
+ * nevypisuje. Položky přidané nebo odebrané v Google Photos ručně tím vidět nejsou.
+ */
+public class AlbumIndex implements AutoCloseable {
+
+    private static final long VERIFY_INTERVAL = TimeUnit.HOURS.toMillis(Long.getLong("f2g.albumVerifyHours", 24 * 7));
+
+    private final PhotosLibraryClient client;
+    private final ContentIndex index;
+    private final Map<String, CompletableFuture<String>> resolving = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> titleLocks = new ConcurrentHashMap<>();
+    private final ReentrantLock listLock = new ReentrantLock();
+    private volatile Map<String, List<Album>> byTitle; // načte se líně při prvním miss
+
+    public AlbumIndex(PhotosLibraryClient client, String filePath) throws IOException {
+        this.client = client;
+        this.index = ContentIndex.open(filePath);
+    }
+
+    /**
+     * Vrátí id alba pro zdroj - z indexu, případně existující album se stejným názvem,
+     * které ještě nepatří jinému zdroji, nebo nově založené album.
+     */
+    public String albumIdFor(String sourceKey, String title) {
+        String entry = index.get(sourceKey);
+        if (entry != null && System.currentTimeMillis() - verifiedAt(entry) < VERIFY_INTERVAL) {
+            return entry.substring(0, entry.indexOf('\t'));
+        }
+
+        // stejný zdroj řeší jen jedno vlákno, ostatní počkají na jeho výsledek
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = resolving.putIfAbsent(sourceKey, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            String albumId = resolve(sourceKey, title);
+            mine.complete(albumId);
+            return albumId;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            resolving.remove(sourceKey, mine);
+        }
+    }
+
+    private String resolve(String sourceKey, String title) {
+        String entry = index.get(sourceKey);
+        if (entry != null) {
+            String albumId = entry.substring(0, entry.indexOf('\t'));
+            if (System.currentTimeMillis() - verifiedAt(entry) < VERIFY_INTERVAL) {
+                return albumId; // mezitím ověřil jiný běh stejného zdroje
+            }
+            if (exists(albumId)) {
+                index.put(sourceKey, albumId + "\t" + System.currentTimeMillis());
+                return albumId;
+            }
+            System.out.println("📁 Album zmizelo z Google Photos, zakládám znovu: " + title);
+        }
+
+        // dva zdroje se stejným názvem nesmí dostat stejné nepřiřazené album
+        ReentrantLock titleLock = titleLocks.computeIfAbsent(title, t -> new ReentrantLock());
+        titleLock.lock();
+        try {
+            String albumId = findUnbound(title);
+            if (albumId != null) {
+                System.out.println("📁 Používám existující album: " + title);
+            } else {
+                Album album = client.createAlbum(
+                        CreateAlbumRequest.newBuilder()
+                                .setAlbum(Album.newBuilder().setTitle(title).build())
+                                .build());
+                System.out.println("📁 Vytvořeno nové album: " + title);
+                albumId = album.getId();
+            }
+            index.put(sourceKey, albumId + "\t" + System.currentTimeMillis());
+            return albumId;
+        } finally {
+            titleLock.unlock();
+        }
+    }
+
+    private static long verifiedAt(String entry) {
+        return Long.parseLong(entry.substring(entry.indexOf('\t') + 1));
+    }
+
+    private boolean exists(String albumId) {
+        try {
+            client.getAlbum(albumId);
+            return true;
+        } catch (ApiException e) {
+            if (e.getStatusCode().getCode() == StatusCode.Code.NOT_FOUND) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Album se stejným názvem, které v indexu ještě nemá žádný zdroj (např. založené starší verzí).
+     */
+    private String findUnbound(String title) {
+        Set<String> bound = new HashSet<>();
+        index.forEach((key, entry) -> bound.add(entry.substring(0, entry.indexOf('\t'))));
+        for (Album album : albumsByTitle().getOrDefault(title, List.of())) {
+            if (!bound.contains(album.getId())) {
+                return album.getId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Seznam alb z Google Photos, načtený jednou pro všechny názvy.
+     */
+    private Map<String, List<Album>> albumsByTitle() {
+        Map<String, List<Album>> albums = byTitle;
+        if (albums != null) {
+            return albums;
+        }
+        listLock.lock();
+        try {
+            if (byTitle == null) {
+                Map<String, List<Album>> loaded = new HashMap<>();
+                client.listAlbums(ListAlbumsRequest.newBuilder().setPageSize(50).build())
+                        .iterateAll()
+                        .forEach(album -> loaded.computeIfAbsent(album.getTitle(), t -> new ArrayList<>()).add(album));
+                byTitle = loaded;
+            }
+            return byTitle;
+        } finally {
+            listLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+}
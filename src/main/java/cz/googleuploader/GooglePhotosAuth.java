@@ -17,9 +17,14 @@ import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.auth.oauth2.Credential;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.UserCredentials;
 import org.apache.http.protocol.HTTP;
 
+import java.io.File;
 import java.io.FileReader;
+import java.time.Instant;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -54,6 +59,58 @@ public class GooglePhotosAuth {
         return new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
     }
 
+    /**
+     * Sestaví UserCredentials z tokenu uloženého v adresáři tokens (viz authorize).
+     */
+    public static UserCredentials loadCredentials(String clientSecretPath) throws Exception {
+        return loadCredentials(clientSecretPath, new File("tokens"));
+    }
+
+    /**
+     * Jako loadCredentials, StoredCredential se čte z daného adresáře (každý účet má vlastní).
+     */
+    public static UserCredentials loadCredentials(String clientSecretPath, File tokensDir) throws Exception {
+        // 1. Připravíme transport a načteme client_secret.json
+        var httpTransport = GoogleNetHttpTransport.newTrustedTransport();
+        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(
+                JSON_FACTORY,
+                new FileReader(clientSecretPath)
+        );
+
+        // 2. Vytvoříme flow se stejnou složkou, kde máme uložené StoredCredential
+        var flow = new GoogleAuthorizationCodeFlow.Builder(
+                httpTransport, JSON_FACTORY,
+                clientSecrets, SCOPES
+        )
+                .setDataStoreFactory(new FileDataStoreFactory(tokensDir))
+                .setAccessType("offline")
+                .build();
+
+        // 3. Načteme uložený Credential pro uživatele "user"
+        Credential oldCredential = flow.loadCredential("user");
+        if (oldCredential == null || oldCredential.getRefreshToken() == null) {
+            throw new IllegalStateException("StoredCredential nenalezen nebo chybí refresh token");
+        }
+
+        // 4. Vytvoříme AccessToken instanci
+        Instant expiresAt = Instant.ofEpochMilli(oldCredential.getExpirationTimeMilliseconds());
+        AccessToken initialToken = new AccessToken(oldCredential.getAccessToken(), Date.from(expiresAt));
+
+        // 5. Sestavíme UserCredentials
+        UserCredentials userCredentials = UserCredentials.newBuilder()
+                .setClientId(clientSecrets.getDetails().getClientId())
+                .setClientSecret(clientSecrets.getDetails().getClientSecret())
+                .setRefreshToken(oldCredential.getRefreshToken())
+                .setAccessToken(initialToken)
+                .build();
+
+        if (userCredentials == null || userCredentials.getAccessToken() == null) {
+            throw new IllegalStateException("Token nebyl nalezen. Spusť nejprve autorizaci.");
+        }
+
+        return userCredentials;
+    }
+
     public static void main(String[] args) throws Exception {
 
         if (args.length != 1) {
@@ -12,185 +12,386 @@ import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 
 import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.auth.oauth2.AccessToken;
-import com.google.auth.oauth2.UserCredentials;
 import com.google.photos.library.v1.PhotosLibraryClient;
 import com.google.photos.library.v1.PhotosLibrarySettings;
-import com.google.photos.library.v1.proto.CreateAlbumRequest;
-import com.google.photos.library.v1.proto.ListAlbumsRequest;
 import com.google.photos.library.v1.upload.UploadMediaItemRequest;
 import com.google.photos.library.v1.upload.UploadMediaItemResponse;
-import com.google.photos.library.v1.proto.BatchCreateMediaItemsRequest;
-import com.google.photos.library.v1.proto.BatchCreateMediaItemsResponse;
-import com.google.photos.library.v1.proto.NewMediaItem;
-import com.google.photos.library.v1.proto.SimpleMediaItem;
-import com.google.photos.types.proto.Album;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.Bandwidth;
+import cz.util.ContentIndex;
+import cz.util.DiskBudget;
+import cz.util.ItemLog;
+import cz.util.Metrics;
+import cz.util.ProgressStore;
+import cz.util.SizeLanes;
+import cz.util.SyncMarks;
+import cz.util.Utils;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 import static cz.googleuploader.GooglePhotosAuth.SCOPES;
-import static cz.util.Utils.readLines;
-import static cz.util.Utils.writeLine;
 
 public class GooglePhotosUploader {
 
-    private static final String UPLOADED_FILES = "uploaded_files.txt";
+    public static final String UPLOADED_FILES = "uploaded_files.txt";
+    private static final String UPLOAD_SESSIONS = "upload_sessions.properties"; // rozpracované resumable uploady
+    private static final String UPLOADED_CONTENT = "uploaded_content.txt";      // SHA-256 -> media item id
+    private static final String DOWNLOADED_CONTENT = "downloaded_content.txt";  // hashe spočítané při stahování z Flickru
+    private static final String UPLOAD_MARKS = "uploaded_marks.properties";     // adresář alba -> mtime při posledním uploadu
+    private static final Metrics.Stage UPLOAD = Metrics.stage("upload");
+
+    public static final String ALBUM_INDEX = "album_index.txt";                 // zdroj alba -> id alba v Google Photos
+    public static final String UPLOAD_URL = "https://photoslibrary.googleapis.com/v1/uploads"; // raw i resumable upload bajtů
+    private static final String ALBUM_SOURCES = "album_sources.txt";            // adresář -> id photosetu (z FlickrDownloaderu)
+    private static final int DEFAULT_WORKERS = 4;        // počet souběžných uploadů
+    private static final String SNIFFED_TYPES = "sniffed_types.txt";            // typy souborů bez známé přípony
+    private static final int IN_FLIGHT = 4;              // rozpracované soubory na jednoho workera
+    private static final int QUEUE_CAPACITY = 2 * UploadBatcher.MAX_BATCH;
+    private static final long FLUSH_TIMEOUT_MS = 5_000;  // max. doba čekání tokenu na založení
+    private static final int MAX_RETRIES = 10;
+    private static final long BASE_BACKOFF = 1_000;      // 1s základní backoff při quota chybě
+    private static final double UPLOAD_RATE = 5.0;       // počáteční volání Photos API za sekundu
+    private static final double MIN_RATE = 0.5;
+    private static final double MAX_RATE = 30.0;
+    private static final int CHUNK_SIZE = Integer.getInteger("f2g.uploadChunkSize", 8 * 1024 * 1024);
+    private static final long RESUMABLE_THRESHOLD = Long.getLong("f2g.resumableThreshold", 32L * 1024 * 1024);
+    private static final long STAGING_POLL_MS = 1000L * Integer.getInteger("f2g.stagingPollSeconds", 10);
+    // stejné limity pruhů jako u stahování (-Df2g.smallLaneMBps, -Df2g.largeLaneMBps), ale vlastní
+    private static final Bandwidth SMALL_BANDWIDTH = SizeLanes.bandwidth(false);
+    private static final Bandwidth LARGE_BANDWIDTH = SizeLanes.bandwidth(true);
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.err.println("Použití: java GooglePhotosUploader <cesta_k_root_složce>, <cesta_k_client_secret.json>");
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Použití: java GooglePhotosUploader <cesta_k_root_složce>, <cesta_k_client_secret.json>, [workers]");
             System.exit(1);
         }
 
         Path rootDir = Paths.get(args[0]);
         String clientSecretPath = args[1];
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WORKERS;
         if (!Files.isDirectory(rootDir)) {
             throw new IllegalArgumentException("Zadaná cesta není adresář: " + rootDir);
         }
 
-        // 1. Připravíme transport, JSON parser a načteme client_secret.json
-        JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-        var httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(
-                JSON_FACTORY,
-                new FileReader(clientSecretPath)
-        );
-
-// 2. Vytvoříme flow se stejnou složkou, kde máme uložené StoredCredential
-        var flow = new GoogleAuthorizationCodeFlow.Builder(
-                httpTransport, JSON_FACTORY,
-                clientSecrets, SCOPES
-        )
-                .setDataStoreFactory(new FileDataStoreFactory(new File("tokens")))
-                .setAccessType("offline")
-                .build();
-
-// 3. Načteme uložený Credential pro uživatele "user"
-        Credential oldCredential = flow.loadCredential("user");
-        if (oldCredential == null || oldCredential.getRefreshToken() == null) {
-            throw new IllegalStateException("StoredCredential nenalezen nebo chybí refresh token");
-        }
-
-
-// 4. Vytvoříme AccessToken instanci
-        Instant expiresAt = Instant.ofEpochMilli(oldCredential.getExpirationTimeMilliseconds());
-        AccessToken initialToken = new AccessToken(oldCredential.getAccessToken(), Date.from(expiresAt));
+        // token se obnovuje na pozadí, všechny workery sdílí jednu obnovu
+        TokenManager tokens = new TokenManager(GooglePhotosAuth.loadCredentials(clientSecretPath));
+        var uploadedFiles = ProgressStore.open(UPLOADED_FILES);
 
-// 5. Sestavíme UserCredentials
-        UserCredentials userCredentials = UserCredentials.newBuilder()
-                .setClientId(clientSecrets.getDetails().getClientId())
-                .setClientSecret(clientSecrets.getDetails().getClientSecret())
-                .setRefreshToken(oldCredential.getRefreshToken())
-                .setAccessToken(initialToken)
-                .build();
-
-        if (userCredentials == null || userCredentials.getAccessToken() == null) {
-            throw new IllegalStateException("Token nebyl nalezen. Spusť nejprve autorizaci.");
+        Metrics.start();
+        try {
+            upload(rootDir, tokens, workers, uploadedFiles, null, null);
+        } finally {
+            Metrics.stop();
+            ItemLog.flush();
+            tokens.close();
+            uploadedFiles.close();
         }
+    }
 
+    /**
+     * Nahraje všechna alba pod rootDir. Bez stagingu projde strom jednou. Se stagingem
+     * (stahování běží souběžně do stejného stromu) prochází strom znovu, dokud downloading
+     * vrací true, nahrané soubory maže a jejich místo vrací do budget.
+     *
+     * @param budget      místo na staging disku, null = soubory po nahrání zůstanou
+     * @param downloading true, dokud do stromu přibývají soubory, null = jeden průchod
+     */
+    public static void upload(Path rootDir, TokenManager tokens, int workers, ProgressStore uploadedFiles,
+                              DiskBudget budget, BooleanSupplier downloading) throws Exception {
         // 4️⃣ Inicializace Google Photos klienta
         PhotosLibrarySettings settings = PhotosLibrarySettings.newBuilder()
-                .setCredentialsProvider(() -> userCredentials)
+                .setCredentialsProvider(tokens::credentials)
                 .build();
 
-        var uploadedFiles = readLines(UPLOADED_FILES);
-
-        try (PhotosLibraryClient client = PhotosLibraryClient.initialize(settings)) {
-            // Nacteme všechna existující alba jednou dopředu
-            Map<String, Album> existingAlbums = new HashMap<>();
-            client.listAlbums(ListAlbumsRequest.newBuilder().setPageSize(50).build())
-                    .iterateAll()
-                    .forEach(album -> existingAlbums.put(album.getTitle(), album));
-
-            try (DirectoryStream<Path> albums = Files.newDirectoryStream(rootDir)) {
-                for (Path albumDir : albums) {
-                    if (!Files.isDirectory(albumDir)) continue;
-
-                    String albumTitle = albumDir.getFileName().toString()
-                            .replaceAll("_", " "); // bezpečný název alba
-
-                    // Pokud už album existuje, použijeme ho, jinak ho vytvoříme
-                    Album album = existingAlbums.get(albumTitle);
-                    if (album == null) {
-                        album = client.createAlbum(
-                                CreateAlbumRequest.newBuilder()
-                                        .setAlbum(Album.newBuilder().setTitle(albumTitle).build())
-                                        .build());
-                        System.out.println("📁 Vytvořeno nové album: " + albumTitle);
-
-                        // Přidáme do mapy, aby bylo dostupné pro další kola
-                        existingAlbums.put(albumTitle, album);
-                    } else {
-                        System.out.println("📁 Používám existující album: " + albumTitle);
-                    }
+        var sessions = new UploadSessions(Paths.get(UPLOAD_SESSIONS), tokens, UPLOAD_URL);
+        var uploadedContent = ContentIndex.open(UPLOADED_CONTENT);
+        var albumMarks = SyncMarks.open(UPLOAD_MARKS);
 
-                    List<NewMediaItem> items = new ArrayList<>();
-                    try (DirectoryStream<Path> photos =
-                                 Files.newDirectoryStream(albumDir, "*.{jpg,jpeg,png,mov,mp4,JPG,JPEG,PNG,MOV,MP4}")) {
-                        for (Path photo : photos) {
-                            String relativePath = albumDir.getFileName() + "/" + photo.getFileName();
-                            if (uploadedFiles.contains(relativePath)) {
-                                System.out.println("  ⏭️ Přeskočeno (již nahráno): " + photo.getFileName());
-                                continue;
-                            }
+        // adaptivní limiter pro uploady i batchCreateMediaItems, reaguje na quota chyby
+        AdaptiveRateLimiter limiter = AdaptiveRateLimiter.create("Photos API", UPLOAD_RATE, MIN_RATE, MAX_RATE);
+
+        // workery pro upload bajtů (max. workers současně), velké soubory mají vlastní pruh,
+        // aby nezdržovaly malé fotky za sebou
+        SizeLanes lanes = new SizeLanes("upload", workers);
+        int smallPermits = IN_FLIGHT * lanes.slots(false);
+        int largePermits = IN_FLIGHT * lanes.slots(true);
 
-                            try (RandomAccessFile raf = new RandomAccessFile(photo.toFile(), "r")) {
-                                UploadMediaItemRequest uploadRequest = UploadMediaItemRequest.newBuilder()
-                                        .setFileName(photo.getFileName().toString())
-                                        .setMimeType(Files.probeContentType(photo))
-                                        .setDataFile(raf)
-                                        .build();
+        // po založení položky v albu soubor ze stagingu zmizí
+        Consumer<String> committed = budget == null ? null : relativePath -> release(budget, rootDir, relativePath);
+        // co se nahrát nepovedlo nebo co se nahrávat nebude, zůstane ležet a stahování na to nečeká
+        Consumer<String> rejected = budget == null ? null : relativePath -> budget.discharge(rootDir.resolve(relativePath));
+        Consumer<Path> skipped = budget == null ? null : budget::discharge;
 
-                                UploadMediaItemResponse uploadResponse = client.uploadMediaItem(uploadRequest);
-                                String uploadToken = uploadResponse.getUploadToken().get();
+        try (PhotosLibraryClient client = PhotosLibraryClient.initialize(settings);
+             AlbumIndex albumIndex = new AlbumIndex(client, ALBUM_INDEX);
+             MediaScanner scanner = new MediaScanner(albumMarks, SNIFFED_TYPES, skipped)) {
 
-                                items.add(NewMediaItem.newBuilder()
-                                        .setSimpleMediaItem(SimpleMediaItem.newBuilder()
-                                                .setUploadToken(uploadToken)
-                                                .build())
-                                        .build());
+            while (true) {
+                // stahování skončilo před začátkem průchodu = tento průchod vidí všechno
+                boolean lastPass = downloading == null || !downloading.getAsBoolean();
 
-                                System.out.println("  🔄 Připraveno: " + photo.getFileName());
+                // hashe a zdroje alb dopisuje souběžné stahování, načítají se pro každý průchod
+                Map<String, String> knownHashes = loadDownloadedHashes();
+                // alba podle zdroje; seznam alb z Google Photos se načte jen při neznámém zdroji
+                Map<String, String> albumSources = loadAlbumSources();
+
+                try (DirectoryStream<Path> albums = Files.newDirectoryStream(rootDir)) {
+                    for (Path albumDir : albums) {
+                        if (!Files.isDirectory(albumDir)) continue;
+
+                        // přidání i přejmenování souboru mění mtime adresáře - beze změny není co nahrávat
+                        String dirName = albumDir.getFileName().toString();
+                        if (scanner.unchanged(albumDir, dirName)) {
+                            if (downloading == null) {
+                                System.out.println("⏭️ Beze změn: " + dirName);
                             }
+                            continue;
                         }
-                    }
 
-                    if (!items.isEmpty()) {
-                        final int MAX_BATCH = 50;
-                        for (int start = 0; start < items.size(); start += MAX_BATCH) {
-                            int end = Math.min(items.size(), start + MAX_BATCH);
-                            List<NewMediaItem> chunk = items.subList(start, end);
-
-                            BatchCreateMediaItemsResponse resp = client.batchCreateMediaItems(
-                                    BatchCreateMediaItemsRequest.newBuilder()
-                                            .setAlbumId(album.getId())
-                                            .addAllNewMediaItems(chunk)
-                                            .build()
-                            );
-
-                            resp.getNewMediaItemResultsList().forEach(r -> {
-                                if (r.getStatus().getCode() == 0) {
-                                    System.out.println("    ✅ Nahráno: " +
-                                            r.getMediaItem().getFilename());
-
-                                    writeLine(UPLOADED_FILES,
-                                            albumDir.getFileName() + "/" + r.getMediaItem().getFilename());
-                                } else {
-                                    System.err.println("    ❌ Chyba: " +
-                                            r.getStatus().getMessage() + " "  + r.getMediaItem().getFilename());
+                        String albumTitle = albumDir.getFileName().toString()
+                                .replaceAll("_", " "); // bezpečný název alba
+
+                        // adresář stažený z Flickru sdílí album s přímým přenosem stejného photosetu
+                        String setId = albumSources.get(dirName);
+                        String albumId = albumIndex.albumIdFor(setId != null ? "set:" + setId : "dir:" + dirName, albumTitle);
+
+                        // scanner posílá soubory rovnou workerům, ti plní frontu batcheru a ten průběžně
+                        // zakládá položky do alba; rozpracovaných souborů je v každém pruhu nejvýš
+                        // IN_FLIGHT * sloty pruhu, řada velkých souborů tak nezablokuje malé
+                        try (UploadBatcher batcher = new UploadBatcher(client, limiter, albumId, uploadedFiles,
+                                uploadedContent, QUEUE_CAPACITY, FLUSH_TIMEOUT_MS, committed, rejected)) {
+                            Semaphore smallInFlight = new Semaphore(smallPermits);
+                            Semaphore largeInFlight = new Semaphore(largePermits);
+                            AtomicBoolean failed = new AtomicBoolean();
+
+                            Map<String, String> dirMarks = scanner.scan(albumDir, dirName, file -> {
+                                if (uploadedFiles.contains(file.relativePath())) {
+                                    ItemLog.info("  ⏭️ Přeskočeno (již nahráno): " + file.path().getFileName());
+                                    if (committed != null) {
+                                        committed.accept(file.relativePath()); // pád mezi zápisem a smazáním
+                                    }
+                                    return;
                                 }
+
+                                UPLOAD.discovered();
+                                boolean large = Files.size(file.path()) > SizeLanes.LARGE_BYTES;
+                                Semaphore inFlight = large ? largeInFlight : smallInFlight;
+                                inFlight.acquire();
+                                lanes.lane(large).execute(() -> {
+                                    try {
+                                        // stejný obsah už nahraný (z jiného alba nebo běhu) jen přidáme do alba
+                                        String sha256 = knownHashes.get(file.relativePath());
+                                        if (sha256 == null) {
+                                            sha256 = Utils.sha256(file.path());
+                                        }
+                                        String mediaItemId = uploadedContent.get(sha256);
+                                        if (mediaItemId != null) {
+                                            batcher.addExisting(file.relativePath(), mediaItemId);
+                                            UPLOAD.done();
+                                        } else if (!uploadPhoto(client, limiter, sessions, file, sha256,
+                                                large ? LARGE_BANDWIDTH : SMALL_BANDWIDTH, batcher)) {
+                                            failed.set(true);
+                                            if (skipped != null) {
+                                                skipped.accept(file.path());
+                                            }
+                                        }
+                                    } catch (Exception e) {
+                                        System.err.println("  ❌ Chyba workeru: " + e);
+                                        UPLOAD.failed();
+                                        failed.set(true);
+                                        if (skipped != null) {
+                                            skipped.accept(file.path());
+                                        }
+                                    } finally {
+                                        inFlight.release();
+                                    }
+                                });
                             });
+
+                            // počkáme na všechny rozpracované soubory alba
+                            smallInFlight.acquire(smallPermits);
+                            largeInFlight.acquire(largePermits);
+                            smallInFlight.release(smallPermits);
+                            largeInFlight.release(largePermits);
+
+                            // značky zapíšeme, jen když je v albu opravdu všechno
+                            batcher.close();
+                            if (!failed.get() && !batcher.hasFailures()) {
+                                albumMarks.putAll(dirMarks);
+                            }
                         }
                     }
                 }
+
+                if (lastPass) {
+                    break;
+                }
+                Thread.sleep(STAGING_POLL_MS);
             }
+        } finally {
+            lanes.close();
+            uploadedContent.close();
         }
+
+        System.out.println("📊 " + limiter);
+        if (budget != null) {
+            System.out.println("📊 " + budget);
+        }
+    }
+
+    /**
+     * Smaže nahraný soubor ze stagingu; chyba mazání jen zdrží stahování, upload je hotový.
+     */
+    private static void release(DiskBudget budget, Path rootDir, String relativePath) {
+        try {
+            budget.release(rootDir.resolve(relativePath));
+        } catch (IOException e) {
+            System.err.println("  ⚠️ Nelze smazat " + relativePath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hashe souborů stažených FlickrDownloaderem (cesta "album/soubor" -> SHA-256),
+     * aby se nemusely při uploadu počítat znovu.
+     */
+    private static Map<String, String> loadDownloadedHashes() throws IOException {
+        Map<String, String> hashes = new HashMap<>();
+        ContentIndex.snapshot(DOWNLOADED_CONTENT).forEach((photoId, entry) -> {
+            int tab = entry.indexOf('\t');
+            hashes.put(entry.substring(tab + 1), entry.substring(0, tab));
+        });
+        return hashes;
+    }
+
+    /**
+     * Id photosetů, ze kterých FlickrDownloader adresáře stáhl (adresář -> id photosetu).
+     */
+    private static Map<String, String> loadAlbumSources() throws IOException {
+        return ContentIndex.snapshot(ALBUM_SOURCES);
+    }
+
+    /**
+     * Nahraje bajty jednoho souboru a výsledný upload token předá batcheru.
+     *
+     * @return false pokud se soubor nahrát nepodařilo
+     */
+    private static boolean uploadPhoto(PhotosLibraryClient client, AdaptiveRateLimiter limiter, UploadSessions sessions,
+                                       MediaScanner.MediaFile file, String sha256, Bandwidth bandwidth,
+                                       UploadBatcher batcher) throws Exception {
+        Path photo = file.path();
+        String relativePath = file.relativePath();
+        String mimeType = file.mimeType();
+        // velké soubory jdou přes uloženou resumable session, aby šlo navázat i po restartu
+        String sessionUrl = Files.size(photo) > RESUMABLE_THRESHOLD
+                ? sessions.sessionFor(relativePath, photo, mimeType)
+                : null;
+
+        long backoff = BASE_BACKOFF;
+        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
+            limiter.acquire();
+            if (sessionUrl == null) {
+                // malý soubor jedním raw požadavkem přímo ze souboru, bez RandomAccessFile a chunků knihovny
+                long start = System.nanoTime();
+                String token = sessions.uploadRaw(photo, mimeType, bandwidth);
+                Metrics.latency("photos-upload").since(start);
+                if (token != null) {
+                    limiter.onSuccess();
+                    UPLOAD.bytes(Files.size(photo));
+                    UPLOAD.done();
+                    batcher.add(relativePath, sha256, token);
+                    ItemLog.info("  🔄 Připraveno: " + photo.getFileName());
+                    return true;
+                }
+                System.err.println("  ⚠️ Quota, zkouším znovu (" + attempt + "/" + MAX_RETRIES + ") " + photo.getFileName());
+                limiter.onThrottle(backoff);
+                UPLOAD.retry();
+                backoff *= 2;
+                continue;
+            }
+            // velký soubor přes resumable session knihovny, ta umí číst jen z RandomAccessFile -
+            // limit pruhu se proto vybere za celý soubor předem, průměrná rychlost pruhu sedí
+            Bandwidth.acquire(bandwidth, Files.size(photo));
+            try (RandomAccessFile raf = new RandomAccessFile(photo.toFile(), "r")) {
+                UploadMediaItemRequest.Builder uploadRequest = UploadMediaItemRequest.newBuilder()
+                        .setFileName(photo.getFileName().toString())
+                        .setMimeType(mimeType)
+                        .setChunkSize(CHUNK_SIZE)
+                        .setDataFile(raf)
+                        // knihovna zjistí přijatý offset a pošle jen zbývající chunky
+                        .setUploadUrl(sessionUrl);
+
+                long start = System.nanoTime();
+                UploadMediaItemResponse uploadResponse = client.uploadMediaItem(uploadRequest.build());
+                Metrics.latency("photos-upload").since(start);
+                if (uploadResponse.getUploadToken().isPresent()) {
+                    limiter.onSuccess();
+                    UPLOAD.bytes(raf.length());
+                    UPLOAD.done();
+                    sessions.remove(relativePath);
+                    batcher.add(relativePath, sha256, uploadResponse.getUploadToken().get());
+                    ItemLog.info("  🔄 Připraveno: " + photo.getFileName());
+                    return true;
+                }
+
+                UploadMediaItemResponse.Error error = uploadResponse.getError().orElse(null);
+                Throwable cause = error != null ? error.getCause() : null;
+                Optional<String> resumeUrl = error != null ? error.getResumeUrl() : Optional.empty();
+
+                if (isQuotaError(cause)) {
+                    System.err.println("  ⚠️ Quota, zkouším znovu (" + attempt + "/" + MAX_RETRIES + ") " + photo.getFileName());
+                    limiter.onThrottle(backoff);
+                    UPLOAD.retry();
+                    backoff *= 2;
+                } else if (resumeUrl.isPresent()) {
+                    // spadl jen některý chunk - další pokus naváže na stejné session
+                    System.err.println("  ⚠️ Přerušený upload, navazuji (" + attempt + "/" + MAX_RETRIES + ") "
+                            + photo.getFileName() + ": " + (cause != null ? cause.getMessage() : ""));
+                    sessionUrl = resumeUrl.get();
+                    sessions.update(relativePath, sessionUrl);
+                    UPLOAD.retry();
+                    Thread.sleep(backoff);
+                    backoff *= 2;
+                } else {
+                    // session expirovala nebo ji server odmítl - začneme novou
+                    System.err.println("  ⚠️ Upload session neplatná, začínám znovu: " + photo.getFileName());
+                    sessions.remove(relativePath);
+                    sessionUrl = sessions.sessionFor(relativePath, photo, mimeType);
+                }
+            } catch (ApiException e) {
+                if (!isQuotaError(e)) {
+                    throw e;
+                }
+                System.err.println("  ⚠️ Quota, zkouším znovu (" + attempt + "/" + MAX_RETRIES + ") " + photo.getFileName());
+                limiter.onThrottle(backoff);
+                UPLOAD.retry();
+                backoff *= 2;
+            }
+        }
+        System.err.println("  ❌ Upload se nezdařil po " + MAX_RETRIES + " pokusech: " + photo.getFileName());
+        UPLOAD.failed();
+        return false;
+    }
+
+    /**
+     * Google Photos hlásí vyčerpanou kvótu jako RESOURCE_EXHAUSTED (HTTP 429).
+     */
+    public static boolean isQuotaError(Throwable e) {
+        return e instanceof ApiException apiException
+                && apiException.getStatusCode().getCode() == StatusCode.Code.RESOURCE_EXHAUSTED;
     }
 }
@@ -0,0 +1,233 @@
+package cz.googleuploader;
+
+import cz.util.ContentIndex;
+import cz.util.MediaTypes;
+import cz.util.SyncMarks;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Paralelní procházení alba včetně vnořených adresářů. Nalezené soubory jdou hned dál
+ * (Sink může blokovat), takže upload začne prvním souborem a paměť nezávisí na velikosti stromu.
+ * <p>
+ * Každý adresář má v SyncMarks značku "mtime[/podadresář]..." pod svou relativní cestou.
+ * U nezměněného adresáře se soubory nečtou, projdou se jen zapamatované podadresáře.
+ * Typ se bere z přípony (MediaTypes), u neznámé přípony z hlavičky souboru; výsledek
+ * rozpoznání se ukládá, aby se stejný soubor při dalším běhu neotevíral.
+ */
+class MediaScanner implements AutoCloseable {
+
+    private static final int THREADS = Integer.getInteger("f2g.scanThreads", 4);
+    private static final String NOT_MEDIA = "-";
+
+    record MediaFile(Path path, String relativePath, String mimeType) {
+    }
+
+    @FunctionalInterface
+    interface Sink {
+        void accept(MediaFile file) throws Exception;
+    }
+
+    private final SyncMarks marks;
+    private final ContentIndex sniffed;
+    private final Consumer<Path> skipped;
+    private final ExecutorService executor =
+            Executors.newFixedThreadPool(THREADS, Thread.ofVirtual().name("scan-", 0).factory());
+
+    /**
+     * @param marks       značky adresářů z předchozích běhů
+     * @param sniffedFile cache rozpoznaných typů (cesta|velikost|mtime -> MIME typ, "-" = není médium)
+     * @param skipped     dostane soubory, které do sink nepůjdou (nejsou médium), může být null
+     */
+    MediaScanner(SyncMarks marks, String sniffedFile, Consumer<Path> skipped) throws IOException {
+        this.marks = marks;
+        this.sniffed = ContentIndex.open(sniffedFile);
+        this.skipped = skipped;
+    }
+
+    /**
+     * Rychlá kontrola bez čtení obsahu adresářů - jen mtime alba a podadresářů známých z minula.
+     */
+    boolean unchanged(Path dir, String key) throws IOException {
+        DirMark mark = DirMark.parse(marks.get(key));
+        if (mark == null || !Files.isDirectory(dir) || mark.mtime() != Files.getLastModifiedTime(dir).toMillis()) {
+            return false;
+        }
+        for (String sub : mark.subdirs()) {
+            if (!unchanged(dir.resolve(sub), key + "/" + sub)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Projde strom alba a každý soubor fotky nebo videa předá do sink.
+     *
+     * @return nové značky prošlých adresářů, zapsat až po úspěšném nahrání celého alba
+     */
+    Map<String, String> scan(Path albumDir, String key, Sink sink) throws IOException, InterruptedException {
+        Walk walk = new Walk(sink);
+        walk.submit(albumDir, key);
+        try {
+            walk.done.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+        return walk.visited;
+    }
+
+    /**
+     * Jedno procházení stromu: počítadlo rozpracovaných adresářů, první chyba ukončí zbytek.
+     */
+    private class Walk {
+        private final Sink sink;
+        private final Map<String, String> visited = new ConcurrentHashMap<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Walk(Sink sink) {
+            this.sink = sink;
+        }
+
+        void submit(Path dir, String key) {
+            outstanding.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    if (error.get() == null) {
+                        scanDirectory(dir, key);
+                    }
+                } catch (Exception e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    if (outstanding.decrementAndGet() == 0) {
+                        if (error.get() != null) {
+                            done.completeExceptionally(error.get());
+                        } else {
+                            done.complete(null);
+                        }
+                    }
+                }
+            });
+        }
+
+        private void scanDirectory(Path dir, String key) throws Exception {
+            // mtime bereme před čtením adresáře, soubory přidané během uploadu zachytí další běh
+            long mtime = Files.getLastModifiedTime(dir).toMillis();
+            String previous = marks.get(key);
+            DirMark mark = DirMark.parse(previous);
+            if (mark != null && mark.mtime() == mtime) {
+                visited.put(key, previous);
+                for (String sub : mark.subdirs()) {
+                    Path child = dir.resolve(sub);
+                    if (Files.isDirectory(child)) {
+                        submit(child, key + "/" + sub);
+                    }
+                }
+                return;
+            }
+
+            List<String> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (name.startsWith(".") || isPartial(name)) {
+                        continue;
+                    }
+                    String relativePath = key + "/" + name;
+                    // typ položky jen podle přípony poznat nejde (adresář "clip.mov"), stat() je nutný
+                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (attrs.isDirectory()) {
+                        subdirs.add(name);
+                        submit(entry, relativePath);
+                        continue;
+                    }
+                    if (!attrs.isRegularFile()) {
+                        continue;
+                    }
+                    // známá přípona = médium bez otevírání souboru
+                    String mimeType = MediaTypes.byExtension(name);
+                    if (mimeType == null) {
+                        mimeType = sniff(entry, relativePath, attrs);
+                        if (mimeType == null) {
+                            if (skipped != null) {
+                                skipped.accept(entry);
+                            }
+                            continue;
+                        }
+                    }
+                    sink.accept(new MediaFile(entry, relativePath, mimeType));
+                }
+            }
+            visited.put(key, new DirMark(mtime, subdirs).toString());
+        }
+    }
+
+    private String sniff(Path file, String relativePath, BasicFileAttributes attrs) throws IOException {
+        String cacheKey = relativePath + "|" + attrs.size() + "|" + attrs.lastModifiedTime().toMillis();
+        String type = sniffed.get(cacheKey);
+        if (type == null) {
+            type = MediaTypes.sniff(file);
+            type = type != null ? type : NOT_MEDIA;
+            sniffed.put(cacheKey, type);
+        }
+        return NOT_MEDIA.equals(type) ? null : type;
+    }
+
+    /**
+     * Rozpracovaná stahování FlickrDownloaderu (.part, .part.meta, .part.N) a dočasné soubory.
+     */
+    private static boolean isPartial(String name) {
+        return name.endsWith(".part") || name.contains(".part.") || name.endsWith(".tmp");
+    }
+
+    /**
+     * Značka adresáře: mtime a jména podadresářů (lomítko ve jménu souboru být nemůže).
+     * Starší značky obsahují jen mtime.
+     */
+    private record DirMark(long mtime, List<String> subdirs) {
+
+        static DirMark parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split("/");
+            try {
+                return new DirMark(Long.parseLong(parts[0]), Arrays.asList(parts).subList(1, parts.length));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return subdirs.isEmpty() ? Long.toString(mtime) : mtime + "/" + String.join("/", subdirs);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        sniffed.close();
+    }
+}
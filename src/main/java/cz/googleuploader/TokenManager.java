@@ -0,0 +1,106 @@
+package cz.googleuploader;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.UserCredentials;
+import cz.util.Metrics;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sdílený přístupový token Google Photos pro všechny workery jednoho účtu.
+ * <p>
+ * Token se obnovuje na pozadí s předstihem -Df2g.tokenRefreshMinutes (výchozí 10) před
+ * expirací, workery na obnovu nečekají. Když token přesto vyprší (uspaný počítač, výpadek
+ * sítě při obnově), obnoví ho první worker a ostatní čekají na tutéž obnovu místo toho,
+ * aby každý volal token endpoint sám. Zámek je ReentrantLock, ne synchronized, aby čekající
+ * virtuální vlákna neblokovala carrier.
+ */
+public class TokenManager implements AutoCloseable {
+
+    private static final long REFRESH_MARGIN_MS = TimeUnit.MINUTES.toMillis(Long.getLong("f2g.tokenRefreshMinutes", 10));
+    private static final long EXPIRY_SKEW_MS = 60_000;  // token platný kratší dobu bereme jako vypršelý
+    private static final long RETRY_MS = 30_000;        // další pokus po neúspěšné obnově na pozadí
+
+    private final UserCredentials credentials;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+            Thread.ofPlatform().daemon().name("token-refresh").unstarted(r));
+    private final LongAdder refreshes = Metrics.counter("f2g_token_refresh_total");
+    private volatile AccessToken token;
+
+    public TokenManager(UserCredentials credentials) {
+        this.credentials = credentials;
+        this.token = credentials.getAccessToken();
+        scheduleRefresh();
+    }
+
+    /**
+     * Credentials pro knihovnu Photos API - obnovu na pozadí vidí i ona, je to stejný objekt.
+     */
+    public UserCredentials credentials() {
+        return credentials;
+    }
+
+    /**
+     * Platný access token, v běžném případě bez čekání.
+     */
+    public String accessToken() throws IOException {
+        AccessToken current = token;
+        if (remainingMillis(current) > EXPIRY_SKEW_MS) {
+            return current.getTokenValue();
+        }
+        return refreshWithin(EXPIRY_SKEW_MS).getTokenValue();
+    }
+
+    /**
+     * Obnoví token, pokud vyprší dřív než za marginMillis. Kdo čekal na zámek, dostane
+     * token obnovený předchozím držitelem bez dalšího volání.
+     */
+    private AccessToken refreshWithin(long marginMillis) throws IOException {
+        lock.lock();
+        try {
+            if (remainingMillis(token) > marginMillis) {
+                return token;
+            }
+            credentials.refresh();
+            token = credentials.getAccessToken();
+            refreshes.increment();
+            return token;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleRefresh() {
+        long delay = Math.max(0, remainingMillis(token) - REFRESH_MARGIN_MS);
+        scheduler.schedule(this::refreshInBackground, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshInBackground() {
+        try {
+            refreshWithin(REFRESH_MARGIN_MS);
+            scheduleRefresh();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("  ⚠️ Obnova tokenu Google Photos selhala, zkusím za " + RETRY_MS / 1000 + " s: "
+                    + e.getMessage());
+            scheduler.schedule(this::refreshInBackground, RETRY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long remainingMillis(AccessToken token) {
+        if (token == null || token.getExpirationTime() == null) {
+            return token == null ? 0 : Long.MAX_VALUE; // bez expirace = platí
+        }
+        return token.getExpirationTime().getTime() - System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,344 @@
+package cz.googleuploader;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.proto.BatchCreateMediaItemsRequest;
+import com.google.photos.library.v1.proto.BatchCreateMediaItemsResponse;
+import com.google.photos.library.v1.proto.NewMediaItem;
+import com.google.photos.library.v1.proto.NewMediaItemResult;
+import com.google.photos.library.v1.proto.SimpleMediaItem;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.ContentIndex;
+import cz.util.ItemLog;
+import cz.util.Metrics;
+import cz.util.ProgressStore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Sbírá upload tokeny od upload workerů a průběžně je zakládá do alba přes
+ * batchCreateMediaItems - jakmile je připraveno MAX_BATCH tokenů nebo vyprší
+ * timeout od první čekající položky. Pád uprostřed alba tak ztratí nanejvýš
+ * jednu rozpracovanou dávku.
+ * <p>
+ * Obsah, který už v knihovně je, se znovu nenahrává - jeho media item se do alba
+ * jen přidá přes batchAddMediaItemsToAlbum. Id nově založených položek se zapisují
+ * do obsahového indexu pod klíčem obsahu (SHA-256, id fotky).
+ */
+public class UploadBatcher implements AutoCloseable {
+
+    public static final int MAX_BATCH = 50; // limit batchCreateMediaItems
+    private static final int MAX_RETRIES = 5;
+    private static final long BASE_BACKOFF = 1_000;
+    private static final long OFFER_CHECK_MS = 1_000; // jak často čekající producent ověří, že batcher žije
+
+    private static final Metrics.Stage ALBUM = Metrics.stage("album"); // zakládání položek v albech
+
+    private static final PendingItem END = new PendingItem(null, null, null, null);
+
+    // fronty všech otevřených batcherů (alba běží souběžně), gauge ukazuje jejich součet
+    private static final Set<BlockingQueue<PendingItem>> QUEUES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Metrics.gauge("f2g_queue_depth{queue=\"batcher\"}", () -> QUEUES.stream().mapToInt(BlockingQueue::size).sum());
+    }
+
+    private final PhotosLibraryClient client;
+    private final AdaptiveRateLimiter limiter;
+    private final String albumId;
+    private final ProgressStore progress;
+    private final ContentIndex content;
+    private final Consumer<String> committed;
+    private final Consumer<String> rejected;
+    private final long flushTimeoutNanos;
+    private final BlockingQueue<PendingItem> queue;
+    private final Thread thread;
+    private volatile boolean failed;
+    private boolean closed;
+
+    /**
+     * Buď nová položka z upload tokenu (item), nebo už existující media item (mediaItemId).
+     */
+    private record PendingItem(String progressKey, String contentKey, NewMediaItem item, String mediaItemId) {
+    }
+
+    /**
+     * @param content   index klíč obsahu -> media item id, může být null
+     * @param committed volá se s klíčem průběhu po zápisu položky do progress (staging soubor smaže), může být null
+     * @param rejected  volá se s klíčem průběhu položky, kterou se v albu založit nepodařilo, může být null
+     */
+    public UploadBatcher(PhotosLibraryClient client, AdaptiveRateLimiter limiter, String albumId,
+                         ProgressStore progress, ContentIndex content, int queueCapacity, long flushTimeoutMillis,
+                         Consumer<String> committed, Consumer<String> rejected) {
+        this.client = client;
+        this.limiter = limiter;
+        this.albumId = albumId;
+        this.progress = progress;
+        this.content = content;
+        this.committed = committed;
+        this.rejected = rejected;
+        this.flushTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(flushTimeoutMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        QUEUES.add(queue);
+        this.thread = Thread.ofPlatform().name("batcher-" + albumId).start(this::run);
+    }
+
+    /**
+     * @return true pokud některou položku nebylo možné v albu založit
+     */
+    public boolean hasFailures() {
+        return failed;
+    }
+
+    /**
+     * Předá token batcheru; blokuje, pokud je fronta plná (backpressure na workery).
+     *
+     * @param contentKey klíč obsahu, pod kterým se zapíše id založené položky, může být null
+     */
+    public void add(String progressKey, String contentKey, String uploadToken) throws InterruptedException {
+        ALBUM.discovered();
+        enqueue(new PendingItem(progressKey, contentKey, NewMediaItem.newBuilder()
+                .setSimpleMediaItem(SimpleMediaItem.newBuilder()
+                        .setUploadToken(uploadToken)
+                        .build())
+                .build(), null));
+    }
+
+    /**
+     * Přidá do alba media item, který už v knihovně je (stejný obsah nahraný dříve).
+     */
+    public void addExisting(String progressKey, String mediaItemId) throws InterruptedException {
+        ALBUM.discovered();
+        enqueue(new PendingItem(progressKey, null, null, mediaItemId));
+    }
+
+    /**
+     * Vloží položku do fronty; plná fronta blokuje, ale jen dokud vlákno batcheru běží.
+     *
+     * @throws IllegalStateException batcher spadl, položku už nikdo nezpracuje
+     */
+    private void enqueue(PendingItem item) throws InterruptedException {
+        while (!queue.offer(item, OFFER_CHECK_MS, TimeUnit.MILLISECONDS)) {
+            if (!thread.isAlive()) {
+                throw new IllegalStateException("Batcher alba " + albumId + " skončil");
+            }
+        }
+    }
+
+    private void run() {
+        List<PendingItem> batch = new ArrayList<>(MAX_BATCH);
+        long deadline = 0;
+        try {
+            while (true) {
+                PendingItem item = batch.isEmpty()
+                        ? queue.take()
+                        : queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                if (item == END) {
+                    flush(batch);
+                    return;
+                }
+                if (item != null) {
+                    if (batch.isEmpty()) {
+                        deadline = System.nanoTime() + flushTimeoutNanos;
+                    }
+                    batch.add(item);
+                }
+                if (item == null || batch.size() >= MAX_BATCH) {
+                    flush(batch);
+                }
+            }
+        } catch (Throwable e) {
+            // rozpracovaná dávka i zbytek fronty propadnou, producenti se přestanou blokovat
+            System.err.println("    ❌ Batcher alba " + albumId + " skončil: " + e);
+            failed = true;
+            batch.forEach(this::abandon);
+            drain();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Položky, které už batcher nezpracuje, nejsou zapsané a nahrají se při dalším běhu.
+     */
+    private void drain() {
+        List<PendingItem> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.stream().filter(p -> p != END).forEach(this::abandon);
+    }
+
+    private void abandon(PendingItem pending) {
+        rejected(pending.progressKey());
+        ALBUM.failed();
+    }
+
+    private void flush(List<PendingItem> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PendingItem> created = batch.stream().filter(p -> p.item() != null).toList();
+        List<PendingItem> existing = batch.stream().filter(p -> p.mediaItemId() != null).toList();
+        if (!created.isEmpty()) {
+            create(created);
+        }
+        if (!existing.isEmpty()) {
+            addExisting(existing);
+        }
+        batch.clear();
+    }
+
+    private void create(List<PendingItem> batch) throws InterruptedException {
+        try {
+            BatchCreateMediaItemsRequest request = BatchCreateMediaItemsRequest.newBuilder()
+                    .setAlbumId(albumId)
+                    .addAllNewMediaItems(batch.stream().map(PendingItem::item).toList())
+                    .build();
+            BatchCreateMediaItemsResponse resp = callWithRetry(() -> client.batchCreateMediaItems(request));
+
+            // výsledky se párují podle upload tokenu, pořadí ani počet API nezaručuje
+            Map<String, PendingItem> byToken = new LinkedHashMap<>();
+            batch.forEach(p -> byToken.put(p.item().getSimpleMediaItem().getUploadToken(), p));
+            for (NewMediaItemResult r : resp.getNewMediaItemResultsList()) {
+                PendingItem pending = byToken.remove(r.getUploadToken());
+                if (pending == null) {
+                    System.err.println("    ⚠️ Výsledek k neznámému upload tokenu: " + r.getStatus().getMessage());
+                    continue;
+                }
+                String progressKey = pending.progressKey();
+                if (r.getStatus().getCode() == 0) {
+                    ItemLog.info("    ✅ Nahráno: " + r.getMediaItem().getFilename());
+                    if (content != null && pending.contentKey() != null) {
+                        content.put(pending.contentKey(), r.getMediaItem().getId());
+                    }
+                    progress.add(progressKey);
+                    committed(progressKey);
+                    ALBUM.done();
+                } else {
+                    System.err.println("    ❌ Chyba: " +
+                            r.getStatus().getMessage() + " " + progressKey);
+                    rejected(progressKey);
+                    ALBUM.failed();
+                    failed = true;
+                }
+            }
+            // položka bez výsledku není zapsaná, nahraje se při dalším běhu
+            for (PendingItem pending : byToken.values()) {
+                System.err.println("    ❌ Bez výsledku: " + pending.progressKey());
+                rejected(pending.progressKey());
+                ALBUM.failed();
+                failed = true;
+            }
+        } catch (ApiException e) {
+            // tokeny z této dávky propadnou, soubory nejsou zapsané a nahrají se při dalším běhu
+            System.err.println("    ❌ batchCreateMediaItems selhalo (" + batch.size() + " položek): " + e.getMessage());
+            batch.forEach(p -> {
+                rejected(p.progressKey());
+                ALBUM.failed();
+            });
+            failed = true;
+        }
+    }
+
+    /**
+     * Existující media itemy se do alba přidávají najednou - request buď projde celý, nebo vůbec.
+     */
+    private void addExisting(List<PendingItem> batch) throws InterruptedException {
+        try {
+            List<String> ids = batch.stream().map(PendingItem::mediaItemId).toList();
+            callWithRetry(() -> client.batchAddMediaItemsToAlbum(albumId, ids));
+            for (PendingItem pending : batch) {
+                ItemLog.info("    🔗 Přidáno do alba: " + pending.progressKey());
+                progress.add(pending.progressKey());
+                committed(pending.progressKey());
+                ALBUM.done();
+            }
+        } catch (ApiException e) {
+            System.err.println("    ❌ batchAddMediaItemsToAlbum selhalo (" + batch.size() + " položek): " + e.getMessage());
+            batch.forEach(p -> {
+                rejected(p.progressKey());
+                ALBUM.failed();
+            });
+            failed = true;
+        }
+    }
+
+    private void committed(String progressKey) {
+        if (committed != null) {
+            committed.accept(progressKey);
+        }
+    }
+
+    private void rejected(String progressKey) {
+        if (rejected != null) {
+            rejected.accept(progressKey);
+        }
+    }
+
+    /**
+     * Volání Photos API přes limiter; při vyčerpané kvótě zpomalí a zkusí znovu
+     * (upload tokeny platí ještě řadu hodin, takže se vyplatí počkat).
+     */
+    private <T> T callWithRetry(Supplier<T> call) throws InterruptedException {
+        long backoff = BASE_BACKOFF;
+        for (int attempt = 1; ; attempt++) {
+            limiter.acquire();
+            long start = System.nanoTime();
+            try {
+                T resp = call.get();
+                Metrics.latency("photos").since(start);
+                limiter.onSuccess();
+                return resp;
+            } catch (ApiException e) {
+                if (attempt >= MAX_RETRIES || !GooglePhotosUploader.isQuotaError(e)) {
+                    throw e;
+                }
+                limiter.onThrottle(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    /**
+     * Založí zbývající tokeny a počká na doběhnutí batcheru. Přerušení čekání batcher
+     * zastaví (nezaložené položky se počítají jako chyba) a nechá nastavený příznak.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (thread.isAlive()) {
+                enqueue(END);
+            }
+            thread.join();
+        } catch (IllegalStateException e) {
+            // batcher mezitím spadl, frontu po sobě vyprázdnil
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            failed = true;
+            QUEUES.remove(queue);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // položky vložené těsně před pádem batcheru
+        if (!queue.isEmpty()) {
+            failed = true;
+            drain();
+        }
+        QUEUES.remove(queue);
+    }
+}
@@ -0,0 +1,130 @@
+package cz.googleuploader;
+
+import cz.util.Bandwidth;
+import cz.util.FileIO;
+import cz.util.Http;
+import cz.util.ItemLog;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Rozpracované resumable uploady (klíč souboru -> upload URL) uložené na disku.
+ * <p>
+ * Session se zakládá ještě před prvním chunkem a hned se zapíše, takže i po zabití
+ * procesu další běh předá URL do UploadMediaItemRequest.setUploadUrl a knihovna
+ * se serveru zeptá, kolik bajtů už má, a pokračuje od tohoto offsetu.
+ * <p>
+ * Malé soubory se posílají bez session jedním raw požadavkem (uploadRaw).
+ */
+class UploadSessions {
+
+    private final Path file;
+    private final TokenManager tokens;
+    private final String uploadUrl;
+    private final Properties sessions = new Properties();
+
+    /**
+     * @param uploadUrl endpoint pro upload bajtů (GooglePhotosUploader.UPLOAD_URL)
+     */
+    UploadSessions(Path file, TokenManager tokens, String uploadUrl) throws IOException {
+        this.file = file;
+        this.tokens = tokens;
+        this.uploadUrl = uploadUrl;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                sessions.load(in);
+            }
+        }
+    }
+
+    /**
+     * Vrátí uloženou upload URL pro soubor, případně založí novou resumable session.
+     */
+    String sessionFor(String key, Path photo, String mimeType) throws IOException {
+        synchronized (this) {
+            String url = sessions.getProperty(key);
+            if (url != null) {
+                ItemLog.info("  ↪️ Navazuji upload: " + photo.getFileName());
+                return url;
+            }
+        }
+
+        Request request = new Request.Builder()
+                .url(uploadUrl)
+                .header("Authorization", "Bearer " + tokens.accessToken())
+                .header("X-Goog-Upload-Protocol", "resumable")
+                .header("X-Goog-Upload-Command", "start")
+                .header("X-Goog-Upload-Raw-Size", Long.toString(Files.size(photo)))
+                .header("X-Goog-Upload-Content-Type", mimeType)
+                .header("X-Goog-Upload-File-Name", photo.getFileName().toString())
+                .post(RequestBody.create(new byte[0]))
+                .build();
+
+        try (Response response = Http.client().newCall(request).execute()) {
+            String url = response.header("X-Goog-Upload-URL");
+            if (!response.isSuccessful() || url == null) {
+                throw new IOException("Nelze založit upload session (HTTP " + response.code() + ") " + photo.getFileName());
+            }
+            update(key, url);
+            return url;
+        }
+    }
+
+    /**
+     * Nahraje celý soubor jedním raw požadavkem, tělo se přenáší z FileChannel přes transferTo (FileIO.fileBody).
+     *
+     * @param bandwidth limit rychlosti pruhu, null = bez limitu
+     * @return upload token, nebo null při vyčerpané kvótě (HTTP 429)
+     */
+    String uploadRaw(Path photo, String mimeType, Bandwidth bandwidth) throws IOException {
+        Request request = new Request.Builder()
+                .url(uploadUrl)
+                .header("Authorization", "Bearer " + tokens.accessToken())
+                .header("X-Goog-Upload-Content-Type", mimeType != null ? mimeType : "application/octet-stream")
+                .header("X-Goog-Upload-Protocol", "raw")
+                .header("X-Goog-Upload-File-Name", photo.getFileName().toString())
+                .post(FileIO.fileBody(photo, MediaType.get("application/octet-stream"), Files.size(photo), bandwidth))
+                .build();
+
+        try (Response response = Http.client().newCall(request).execute()) {
+            if (response.code() == 429) {
+                return null;
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Upload HTTP " + response.code() + " " + photo.getFileName());
+            }
+            return response.body().string();
+        }
+    }
+
+    synchronized void update(String key, String url) throws IOException {
+        if (!url.equals(sessions.getProperty(key))) {
+            sessions.setProperty(key, url);
+            save();
+        }
+    }
+
+    synchronized void remove(String key) throws IOException {
+        if (sessions.remove(key) != null) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            sessions.store(out, "Rozpracované uploady do Google Photos");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
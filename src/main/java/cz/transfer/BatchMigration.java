@@ -0,0 +1,135 @@
+package cz.transfer;
+
+import com.flickr4java.flickr.Flickr;
+import cz.flickrdownloader.FlickrAuth;
+import cz.googleuploader.GooglePhotosAuth;
+import cz.googleuploader.TokenManager;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.Bandwidth;
+import cz.util.FairScheduler;
+import cz.util.ItemLog;
+import cz.util.Metrics;
+import cz.util.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Přenos víc párů účtů Flickr -> Google Photos v jednom JVM.
+ * <p>
+ * Manifest má na řádku jeden pár (oddělené mezerami, # je komentář):
+ * <pre>
+ * název  API_KEY  API_SECRET  client_secret.json  [ignoreAutoUpload]  [workers]
+ * </pre>
+ * Každý účet má vlastní adresář název/ vedle manifestu se vším stavem i přihlášením:
+ * flickr.properties (FlickrAuth) a tokens/ (GooglePhotosAuth), obojí vznikne spuštěním
+ * autorizace v tomto adresáři. Účty sdílí limitery Flickr i Photos API (společná kvóta),
+ * globální počet souběžných přenosů rozdělovaný mezi účty round-robin a volitelný
+ * limit rychlosti v MB/s.
+ */
+public class BatchMigration {
+
+    private static final int DEFAULT_SLOTS = 16;
+
+    /**
+     * Jeden řádek manifestu.
+     */
+    record Account(String name, Path stateDir, String apiKey, String apiSecret, String clientSecretPath,
+                   boolean ignoreAutoUpload, int workers) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Použití: java BatchMigration <manifest>, [souběžné přenosy celkem], [limit MB/s]");
+            System.exit(1);
+        }
+
+        Path manifest = Paths.get(args[0]);
+        int slots = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SLOTS;
+        Bandwidth bandwidth = args.length > 2 ? new Bandwidth((long) (Double.parseDouble(args[2]) * 1024 * 1024)) : null;
+
+        List<Account> accounts = readManifest(manifest);
+        System.out.println("👥 Účtů: " + accounts.size() + ", souběžných přenosů: " + slots
+                + (bandwidth != null ? ", limit " + args[2] + " MB/s" : ""));
+
+        Utils.ignoreCert(); // 1. (Test) Vypnutí validace SSL certifikátů
+
+        // společná kvóta API pro všechny účty
+        AdaptiveRateLimiter limiter = FlickrToGooglePhotos.flickrLimiter();
+        AdaptiveRateLimiter uploadLimiter = FlickrToGooglePhotos.photosLimiter();
+
+        Map<String, Future<?>> results = new LinkedHashMap<>();
+        Metrics.start();
+        try (FairScheduler scheduler = new FairScheduler(slots);
+             ExecutorService accountThreads = Executors.newThreadPerTaskExecutor(
+                     Thread.ofVirtual().name("account-", 0).factory())) {
+            for (Account account : accounts) {
+                FairScheduler.Lane lane = scheduler.lane(account.name(), account.workers());
+                results.put(account.name(), accountThreads.submit(() -> {
+                    System.out.println("▶️ " + account.name());
+                    Flickr flickr = FlickrAuth.connect(account.apiKey(), account.apiSecret(),
+                            account.stateDir().resolve("flickr.properties"));
+                    try (TokenManager tokens = new TokenManager(GooglePhotosAuth.loadCredentials(
+                            account.clientSecretPath(), account.stateDir().resolve("tokens").toFile()))) {
+                        FlickrToGooglePhotos.transferAccount(account.stateDir(), flickr, tokens,
+                                account.ignoreAutoUpload(), limiter, uploadLimiter, lane, bandwidth);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Map.Entry<String, Future<?>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                    System.out.println("✅ " + result.getKey());
+                } catch (ExecutionException e) {
+                    System.err.println("❌ " + result.getKey() + ": " + e.getCause());
+                }
+            }
+        } finally {
+            Metrics.stop();
+            ItemLog.flush();
+        }
+
+        System.out.println("📊 " + limiter);
+        System.out.println("📊 " + uploadLimiter);
+        System.out.println("🎉 Hotovo!");
+    }
+
+    static List<Account> readManifest(Path manifest) throws IOException {
+        Path baseDir = manifest.toAbsolutePath().getParent();
+        List<Account> accounts = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 4 || fields.length > 6) {
+                throw new IllegalArgumentException("Neplatný řádek " + lineNumber + " manifestu: " + line);
+            }
+            Path stateDir = baseDir.resolve(fields[0]);
+            if (!Files.isDirectory(stateDir)) {
+                throw new IllegalArgumentException("Chybí adresář účtu: " + stateDir);
+            }
+            accounts.add(new Account(fields[0], stateDir, fields[1], fields[2],
+                    baseDir.resolve(fields[3]).toString(),
+                    fields.length > 4 && Boolean.parseBoolean(fields[4]),
+                    fields.length > 5 ? Integer.parseInt(fields[5]) : FlickrToGooglePhotos.DEFAULT_WORKERS));
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,424 @@
+package cz.transfer;
+
+import com.flickr4java.flickr.Flickr;
+import com.flickr4java.flickr.FlickrException;
+import com.flickr4java.flickr.FlickrRuntimeException;
+import com.flickr4java.flickr.RequestContext;
+import com.flickr4java.flickr.auth.Auth;
+import com.flickr4java.flickr.photos.Photo;
+import com.flickr4java.flickr.photosets.Photoset;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.PhotosLibrarySettings;
+import cz.flickrdownloader.FlickrAuth;
+import cz.flickrdownloader.FlickrDownloader;
+import cz.flickrdownloader.PhotosetPages;
+import cz.googleuploader.AlbumIndex;
+import cz.googleuploader.GooglePhotosAuth;
+import cz.googleuploader.GooglePhotosUploader;
+import cz.googleuploader.TokenManager;
+import cz.googleuploader.UploadBatcher;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.Bandwidth;
+import cz.util.ContentIndex;
+import cz.util.Http;
+import cz.util.ItemLog;
+import cz.util.Metrics;
+import cz.util.ProgressStore;
+import cz.util.SizeLanes;
+import cz.util.SyncMarks;
+import cz.util.Utils;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Přenos Flickr -> Google Photos v jednom průchodu bez ukládání na disk.
+ * Originál se čte přímo z HTTP odpovědi Flickru a posílá se jako tělo raw uploadu
+ * do Google Photos, v paměti je vždy jen pár okio segmentů.
+ */
+public class FlickrToGooglePhotos {
+
+    private static final int MAX_RETRIES = 10;
+    private static final long BASE_BACKOFF = 1_000; // 1s základní backoff
+    private static final double DOWNLOAD_RATE = 1.0;   // počáteční volání Flickr API za sekundu
+    private static final double UPLOAD_RATE = 5.0;     // počáteční volání Photos API za sekundu
+    static final int DEFAULT_WORKERS = 4;              // počet souběžných přenosů
+    private static final int QUEUE_CAPACITY = 2 * UploadBatcher.MAX_BATCH;
+    private static final long FLUSH_TIMEOUT_MS = 5_000;
+    private static final int IN_FLIGHT = 2 * QUEUE_CAPACITY; // rozpracované fotky jednoho alba (části alba)
+
+    static final String ALBUMS_FILE = "transferred_albums.txt"; // id hotových photosetů
+    static final String PHOTOS_FILE = "transferred_photos.txt"; // "id alba/id fotky" přenesených fotek
+    static final String MEDIA_FILE = "transferred_media.txt";   // id fotky -> media item id v Google Photos
+    static final String MARKS_FILE = "transferred_marks.properties"; // id alba -> date_update při posledním přenosu
+
+    private static final Metrics.Stage TRANSFER = Metrics.stage("transfer");
+    // limity pruhů (-Df2g.smallLaneMBps, -Df2g.largeLaneMBps) platí i pro přímý přenos, navíc ke globálnímu
+    private static final Bandwidth SMALL_BANDWIDTH = SizeLanes.bandwidth(false);
+    private static final Bandwidth LARGE_BANDWIDTH = SizeLanes.bandwidth(true);
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length < 3) {
+            System.out.println("Pouziti: API_KEY, API_SECRET, client_secret.json path, [ignoreAutoUpload], [workers]");
+            System.exit(1);
+        }
+
+        var apiKey = args[0];
+        var apiSecret = args[1];
+        var clientSecretPath = args[2];
+        var ingoreAutoUpload = args.length > 3 && Boolean.parseBoolean(args[3]);
+        var workers = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_WORKERS;
+
+        Utils.ignoreCert(); // 1. (Test) Vypnutí validace SSL certifikátů
+
+        Flickr flickr = FlickrAuth.connect(apiKey, apiSecret);
+        TokenManager tokens = new TokenManager(GooglePhotosAuth.loadCredentials(clientSecretPath));
+
+        AdaptiveRateLimiter limiter = flickrLimiter();
+        AdaptiveRateLimiter uploadLimiter = photosLimiter();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, Thread.ofVirtual().name("transfer-", 0).factory());
+        Metrics.gauge("f2g_queue_depth{queue=\"transfer\"}", () -> ((ThreadPoolExecutor) executor).getQueue().size());
+        Metrics.start();
+
+        try {
+            transferAccount(Paths.get(""), flickr, tokens, ingoreAutoUpload, limiter, uploadLimiter, executor, null);
+        } finally {
+            Metrics.stop();
+            ItemLog.flush();
+            executor.shutdown();
+            tokens.close();
+        }
+
+        System.out.println("📊 " + limiter);
+        System.out.println("📊 " + uploadLimiter);
+        System.out.println("🎉 Hotovo!");
+    }
+
+    static AdaptiveRateLimiter flickrLimiter() {
+        return AdaptiveRateLimiter.create("Flickr API", DOWNLOAD_RATE, 0.1, 5.0);
+    }
+
+    static AdaptiveRateLimiter photosLimiter() {
+        return AdaptiveRateLimiter.create("Photos API", UPLOAD_RATE, 0.5, 30.0);
+    }
+
+    /**
+     * Přenese všechna alba jednoho účtu. Stavové soubory leží v stateDir, limitery, executor
+     * a limit rychlosti mohou být sdílené s dalšími účty (BatchMigration).
+     *
+     * @param bandwidth globální limit přenosu, null = bez limitu
+     */
+    static void transferAccount(Path stateDir, Flickr flickr, TokenManager tokens, boolean ignoreAutoUpload,
+                                AdaptiveRateLimiter limiter, AdaptiveRateLimiter uploadLimiter,
+                                Executor executor, Bandwidth bandwidth) throws Exception {
+        Auth auth = flickr.getAuth();
+        RequestContext.getRequestContext().setAuth(auth);
+        var userId = auth.getUser().getId();
+        System.out.println("Přihlášen jako: " + auth.getUser().getUsername() + " (" + userId + ")");
+
+        PhotosLibrarySettings settings = PhotosLibrarySettings.newBuilder()
+                .setCredentialsProvider(tokens::credentials)
+                .build();
+
+        OkHttpClient http = Http.client();
+
+        var transferredAlbums = ProgressStore.open(stateDir.resolve(ALBUMS_FILE).toString());
+        var transferredPhotos = ProgressStore.open(stateDir.resolve(PHOTOS_FILE).toString());
+        var transferredMedia = ContentIndex.open(stateDir.resolve(MEDIA_FILE).toString());
+        var albumMarks = SyncMarks.open(stateDir.resolve(MARKS_FILE).toString());
+        // fotky, které podle Reconcile v albu chybí, se přenesou znovu i s hotovým albem
+        Path workList = stateDir.resolve(Reconcile.MISSING_FILE);
+        Set<String> retry = ContentIndex.snapshot(workList.toString()).keySet();
+        Set<String> retrySets = new HashSet<>();
+        retry.forEach(key -> retrySets.add(key.substring(0, key.indexOf('/'))));
+        boolean allTransferred = true;
+
+        List<Photoset> sets = FlickrDownloader.listPhotosets(flickr, limiter, userId);
+        PhotosetPages pages = new PhotosetPages(flickr, auth, limiter);
+
+        try (PhotosLibraryClient client = PhotosLibraryClient.initialize(settings);
+             AlbumIndex albumIndex = new AlbumIndex(client, stateDir.resolve(GooglePhotosUploader.ALBUM_INDEX).toString())) {
+            Transfer transfer = new Transfer(flickr, auth, limiter, uploadLimiter, http, tokens,
+                    GooglePhotosUploader.UPLOAD_URL, client, pages, executor, bandwidth, retry);
+            for (Photoset set : sets) {
+                // stejný název, jaký by vznikl přes FlickrDownloader + GooglePhotosUploader
+                String dirName = Utils.sanitizeName(set.getTitle());
+                String version = set.getDateUpdate();
+                boolean done = version != null ? albumMarks.unchanged(set.getId(), version) : transferredAlbums.contains(set.getId());
+                if (done && !retrySets.contains(set.getId())) {
+                    System.out.println("Album already transferred: " + dirName);
+                    continue;
+                }
+
+                if (ignoreAutoUpload && "Auto_Upload".equals(dirName)) {
+                    System.out.println("⏭️ Přeskočeno: " + dirName + " (Auto_Upload)");
+                    continue;
+                }
+
+                String albumId = albumIndex.albumIdFor("set:" + set.getId(), dirName.replaceAll("_", " "));
+
+                if (transferPages(transfer, set.getId(), albumId, 1, Integer.MAX_VALUE,
+                        transferredPhotos, transferredMedia, () -> false)) {
+                    transferredAlbums.add(set.getId());
+                    albumMarks.put(set.getId(), version);
+                } else {
+                    allTransferred = false;
+                }
+            }
+            if (allTransferred && !retry.isEmpty()) {
+                Files.deleteIfExists(workList);
+                System.out.println("✅ Pracovní seznam " + Reconcile.MISSING_FILE + " vyřízen");
+            }
+        } finally {
+            transferredPhotos.close();
+            transferredAlbums.close();
+            transferredMedia.close();
+        }
+    }
+
+    /**
+     * Sdílený stav přenosu jednoho účtu, který potřebuje každé album (i jeho část v ShardedMigration).
+     *
+     * @param uploadUrl endpoint pro upload bajtů (GooglePhotosUploader.UPLOAD_URL)
+     * @param retry     klíče "id alba/id fotky" z pracovního seznamu Reconcile, přenesou se znovu
+     */
+    record Transfer(Flickr flickr, Auth auth, AdaptiveRateLimiter limiter, AdaptiveRateLimiter uploadLimiter,
+                    OkHttpClient http, TokenManager tokens, String uploadUrl, PhotosLibraryClient client,
+                    PhotosetPages pages, Executor executor, Bandwidth bandwidth, Set<String> retry) {
+    }
+
+    /**
+     * Přenese fotky ze stránek fromPage..toPage photosetu do alba albumId.
+     *
+     * @param cancelled před každou další fotkou se ověří, jestli práci nepřevzal někdo jiný
+     *                  (ztracený lease v ShardedMigration); rozpracované fotky doběhnou
+     * @return true pokud se přenesly všechny
+     */
+    static boolean transferPages(Transfer transfer, String setId, String albumId, int fromPage, int toPage,
+                                 ProgressStore transferredPhotos, ContentIndex transferredMedia,
+                                 BooleanSupplier cancelled) throws Exception {
+        AtomicBoolean transferProblem = new AtomicBoolean();
+        try (UploadBatcher batcher = new UploadBatcher(transfer.client(), transfer.uploadLimiter(), albumId,
+                transferredPhotos, transferredMedia, QUEUE_CAPACITY, FLUSH_TIMEOUT_MS, null, null)) {
+            // rozpracovaných fotek je nejvýš IN_FLIGHT, další stránky alba počkají
+            Semaphore inFlight = new Semaphore(IN_FLIGHT);
+            PhotosetPages pages = transfer.pages();
+            try {
+                pages.forEachPhoto(setId, fromPage, toPage, pages.fetch(setId, fromPage), photo -> {
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("Úsek převzal jiný uzel");
+                    }
+                    String progressKey = setId + "/" + photo.getId();
+                    boolean retry = transfer.retry().contains(progressKey);
+                    if (transferredPhotos.contains(progressKey) && !retry) {
+                        ItemLog.info("  ⏭️ Přeskočeno: " + photo.getTitle() + " (" + photo.getId() + ")");
+                        return;
+                    }
+                    try {
+                        // fotka už přenesená s jiným albem - do tohoto ji jen přidáme, bez stahování;
+                        // chybějící položka z Reconcile se nahraje znovu, původní media item už nemusí existovat
+                        String mediaItemId = retry ? null : transferredMedia.get(photo.getId());
+                        if (mediaItemId != null) {
+                            batcher.addExisting(progressKey, mediaItemId);
+                            return;
+                        }
+                        TRANSFER.discovered();
+                        inFlight.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CancellationException("Přenos alba přerušen");
+                    }
+                    transfer.executor().execute(() -> {
+                        try {
+                            if (transferPhoto(transfer.flickr(), transfer.auth(), transfer.limiter(),
+                                    transfer.uploadLimiter(), transfer.http(), transfer.tokens(), transfer.uploadUrl(),
+                                    transfer.bandwidth(), photo, progressKey, batcher)) {
+                                TRANSFER.done();
+                            } else {
+                                TRANSFER.failed();
+                                transferProblem.set(true);
+                            }
+                        } catch (Exception e) {
+                            System.err.println("  ❌ Chyba workeru: " + e);
+                            TRANSFER.failed();
+                            transferProblem.set(true);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                });
+            } catch (CancellationException e) {
+                if (!cancelled.getAsBoolean()) {
+                    throw e; // přerušení, ne převzatá práce
+                }
+                transferProblem.set(true);
+            }
+
+            // počkáme na všechny rozpracované fotky
+            inFlight.acquire(IN_FLIGHT);
+            batcher.close();
+            if (batcher.hasFailures()) {
+                transferProblem.set(true);
+            }
+        }
+        return !transferProblem.get();
+    }
+
+    /**
+     * Stáhne originál z Flickru a rovnou ho streamuje do Google Photos.
+     * Upload token předá batcheru, který položku založí v albu.
+     */
+    private static boolean transferPhoto(Flickr flickr, Auth auth, AdaptiveRateLimiter limiter,
+                                         AdaptiveRateLimiter uploadLimiter, OkHttpClient http,
+                                         TokenManager tokens, String uploadUrl, Bandwidth bandwidth, Photo photo,
+                                         String progressKey, UploadBatcher batcher) throws Exception {
+        RequestContext.getRequestContext().setAuth(auth);
+
+        Optional<String> originalUrl;
+        try {
+            originalUrl = FlickrDownloader.originalUrl(flickr, limiter, photo);
+        } catch (FlickrException | FlickrRuntimeException e) {
+            System.err.println("  ❌ Nelze načíst velikosti " + photo.getId() + ": " + e.getMessage());
+            return false;
+        }
+        if (originalUrl.isEmpty()) {
+            System.err.println("  ❌ Originál nenalezen: " + photo.getId());
+            return false;
+        }
+
+        String fileName = FlickrDownloader.fileName(photo);
+        Request download = new Request.Builder()
+                .url(originalUrl.get())
+                .header("User-Agent", "cz.transfer.FlickrToGooglePhotos/1.0")
+                .build();
+
+        long backoff = BASE_BACKOFF;
+        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
+            limiter.awaitPause();
+            uploadLimiter.acquire();
+
+            // při chybě se stream nedá přetočit, nový pokus proto začíná znovu stažením
+            try (Response response = http.newCall(download).execute()) {
+                int code = response.code();
+                if (code == 200) {
+                    String uploadToken = upload(http, tokens, uploadUrl, fileName, response.body(), bandwidth,
+                            FlickrDownloader.isLarge(photo) ? LARGE_BANDWIDTH : SMALL_BANDWIDTH);
+                    if (uploadToken == null) {
+                        // Google Photos vrátil 429 - zpomalíme uploady a zkusíme znovu
+                        uploadLimiter.onThrottle(backoff);
+                        TRANSFER.retry();
+                        backoff *= 2;
+                        continue;
+                    }
+                    uploadLimiter.onSuccess();
+                    batcher.add(progressKey, photo.getId(), uploadToken);
+                    ItemLog.info("  🔄 Přeneseno: " + fileName);
+                    return true;
+
+                } else if (code == 429) {
+                    long wait = AdaptiveRateLimiter.parseRetryAfter(response.header("Retry-After"), backoff);
+                    System.err.println("  ⚠️ 429, čekám " + wait + " ms a zkouším znovu ("
+                            + attempt + "/" + MAX_RETRIES + ") " + fileName);
+                    limiter.onThrottle(wait);
+                    TRANSFER.retry();
+                    backoff *= 2;
+
+                } else {
+                    System.err.println("  ❌ HTTP " + code + " při stahování " + fileName);
+                    return false;
+                }
+            } catch (IOException e) {
+                System.err.println("  ⚠️ " + e.getMessage() + " (" + attempt + "/" + MAX_RETRIES + ") " + fileName);
+                TRANSFER.retry();
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+
+        System.err.println("  ❌ Nezdařilo se přenést po " + MAX_RETRIES + " pokusech: " + fileName);
+        return false;
+    }
+
+    /**
+     * Raw upload do Google Photos, tělo požadavku se čte přímo ze zdrojové odpovědi.
+     *
+     * @return upload token pro batchCreateMediaItems, null pokud Google Photos vrátil 429
+     */
+    static String upload(OkHttpClient http, TokenManager tokens, String uploadUrl, String fileName,
+                         ResponseBody source) throws IOException {
+        return upload(http, tokens, uploadUrl, fileName, source, null, null);
+    }
+
+    /**
+     * Raw upload s globálním limitem rychlosti a limitem pruhu (null = bez limitu).
+     */
+    static String upload(OkHttpClient http, TokenManager tokens, String uploadUrl, String fileName,
+                         ResponseBody source, Bandwidth bandwidth, Bandwidth laneBandwidth) throws IOException {
+
+        MediaType sourceType = source.contentType();
+        RequestBody body = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return MediaType.get("application/octet-stream");
+            }
+
+            @Override
+            public long contentLength() {
+                return source.contentLength();
+            }
+
+            @Override
+            public boolean isOneShot() {
+                return true; // zdroj je stream, OkHttp ho nesmí posílat znovu
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                TRANSFER.bytes(sink.writeAll(Bandwidth.limit(laneBandwidth, Bandwidth.limit(bandwidth, source.source()))));
+            }
+        };
+
+        Request request = new Request.Builder()
+                .url(uploadUrl)
+                .header("Authorization", "Bearer " + tokens.accessToken())
+                .header("X-Goog-Upload-Content-Type",
+                        sourceType != null ? sourceType.toString() : "application/octet-stream")
+                .header("X-Goog-Upload-Protocol", "raw")
+                .header("X-Goog-Upload-File-Name", fileName)
+                .post(body)
+                .build();
+
+        try (Response response = http.newCall(request).execute()) {
+            if (response.code() == 429) {
+                return null;
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Upload HTTP " + response.code() + " " + fileName);
+            }
+            return response.body().string();
+        }
+    }
+}
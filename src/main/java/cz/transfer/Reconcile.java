@@ -0,0 +1,293 @@
+package cz.transfer;
+
+import com.flickr4java.flickr.Flickr;
+import com.flickr4java.flickr.RequestContext;
+import com.flickr4java.flickr.auth.Auth;
+import com.flickr4java.flickr.photosets.Photoset;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.PhotosLibrarySettings;
+import com.google.photos.library.v1.internal.InternalPhotosLibraryClient.SearchMediaItemsPage;
+import com.google.photos.library.v1.proto.SearchMediaItemsRequest;
+import cz.flickrdownloader.FlickrAuth;
+import cz.flickrdownloader.FlickrDownloader;
+import cz.flickrdownloader.PhotosetPages;
+import cz.googleuploader.GooglePhotosAuth;
+import cz.googleuploader.GooglePhotosUploader;
+import cz.googleuploader.TokenManager;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.ContentIndex;
+import cz.util.Utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Kontrola migrace bez spoléhání na logy průběhu: porovná členství ve photosetech Flickru
+ * s obsahem alb v Google Photos a vypíše jen rozdíly.
+ * <p>
+ * Obě strany se čtou po celých stránkách (photosets.getPhotos po 500, searchMediaItems po 100),
+ * album z Google Photos se načítá souběžně se stránkami photosetu a pak se spojí v paměti -
+ * nejdřív přes media item id z transferred_media.txt (přímý přenos), zbytek podle názvu
+ * souboru po sanitizaci (dvoukrokový přenos). Žádné volání na jednotlivou položku.
+ * <p>
+ * Výsledkem je pracovní seznam ve stavovém adresáři účtu: reconcile_missing.txt (fotky, které
+ * v albu chybí) a reconcile_extra.txt (položky alba, které na Flickru nejsou). Chybějící fotky
+ * při dalším běhu FlickrToGooglePhotos přenese znovu bez ohledu na transferred_photos.txt;
+ * položky navíc se jen vypíšou, mazat je musí uživatel.
+ */
+public class Reconcile {
+
+    static final String MISSING_FILE = "reconcile_missing.txt"; // "id alba/id fotky" -> název souboru
+    static final String EXTRA_FILE = "reconcile_extra.txt";     // "id alba/media item id" -> název souboru
+    private static final int DEFAULT_WORKERS = 4;               // souběžně porovnávaná alba
+    private static final int SEARCH_PAGE_SIZE = 100;            // maximum searchMediaItems
+    private static final int MAX_RETRIES = 10;
+    private static final long BASE_BACKOFF = 1_000;
+
+    /**
+     * Fotka z photosetu: media item id zná jen přímý přenos, jinak null.
+     */
+    record FlickrItem(String photoId, String fileName, String mediaItemId) {
+    }
+
+    /**
+     * Řádek pracovního seznamu.
+     */
+    record Item(String key, String fileName) {
+    }
+
+    record Diff(List<Item> missing, List<Item> extra) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || args.length > 6) {
+            System.err.println("Použití: java Reconcile API_KEY, API_SECRET, <cesta_k_client_secret.json>, "
+                    + "[adresář účtu], [ignoreAutoUpload], [workers]");
+            System.exit(1);
+        }
+
+        var apiKey = args[0];
+        var apiSecret = args[1];
+        var clientSecretPath = args[2];
+        Path stateDir = Paths.get(args.length > 3 ? args[3] : "");
+        var ignoreAutoUpload = args.length > 4 && Boolean.parseBoolean(args[4]);
+        var workers = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_WORKERS;
+
+        Utils.ignoreCert(); // 1. (Test) Vypnutí validace SSL certifikátů
+
+        // přihlášení ze stejného místa jako BatchMigration, bez adresáře účtu z aktuálního adresáře
+        Flickr flickr = FlickrAuth.connect(apiKey, apiSecret, stateDir.resolve("flickr.properties"));
+        Auth auth = flickr.getAuth();
+        RequestContext.getRequestContext().setAuth(auth);
+
+        AdaptiveRateLimiter limiter = FlickrToGooglePhotos.flickrLimiter();
+        AdaptiveRateLimiter photosLimiter = FlickrToGooglePhotos.photosLimiter();
+
+        Map<String, String> albumIndex = ContentIndex.snapshot(stateDir.resolve(GooglePhotosUploader.ALBUM_INDEX).toString());
+        Map<String, String> media = ContentIndex.snapshot(stateDir.resolve(FlickrToGooglePhotos.MEDIA_FILE).toString());
+
+        List<Photoset> sets = FlickrDownloader.listPhotosets(flickr, limiter, auth.getUser().getId());
+        PhotosetPages pages = new PhotosetPages(flickr, auth, limiter);
+        System.out.println("🔍 Porovnávám " + sets.size() + " alb");
+
+        try (TokenManager tokens = new TokenManager(GooglePhotosAuth.loadCredentials(
+                clientSecretPath, stateDir.resolve("tokens").toFile()));
+             PhotosLibraryClient client = PhotosLibraryClient.initialize(PhotosLibrarySettings.newBuilder()
+                     .setCredentialsProvider(tokens::credentials)
+                     .build());
+             ExecutorService executor = Executors.newFixedThreadPool(workers,
+                     Thread.ofVirtual().name("reconcile-", 0).factory())) {
+
+            Map<Photoset, Future<Diff>> results = new LinkedHashMap<>();
+            for (Photoset set : sets) {
+                String dirName = Utils.sanitizeName(set.getTitle());
+                if (ignoreAutoUpload && "Auto_Upload".equals(dirName)) {
+                    continue;
+                }
+                // přímý přenos i uploader s album_sources.txt klíčují podle photosetu, starší upload podle adresáře
+                String entry = albumIndex.getOrDefault("set:" + set.getId(), albumIndex.get("dir:" + dirName));
+                String albumId = entry != null ? entry.substring(0, entry.indexOf('\t')) : null;
+                results.put(set, executor.submit(() -> reconcileSet(pages, client, photosLimiter, media, set, albumId)));
+            }
+
+            List<Item> missing = new ArrayList<>();
+            List<Item> extra = new ArrayList<>();
+            boolean complete = true;
+            for (Map.Entry<Photoset, Future<Diff>> result : results.entrySet()) {
+                String title = result.getKey().getTitle();
+                try {
+                    Diff diff = result.getValue().get();
+                    missing.addAll(diff.missing());
+                    extra.addAll(diff.extra());
+                    if (!diff.missing().isEmpty() || !diff.extra().isEmpty()) {
+                        System.out.println("  ⚠️ " + title + ": chybí " + diff.missing().size()
+                                + ", navíc " + diff.extra().size());
+                    }
+                } catch (ExecutionException e) {
+                    System.err.println("  ❌ " + title + ": " + e.getCause());
+                    complete = false;
+                }
+            }
+
+            write(stateDir.resolve(MISSING_FILE), missing);
+            write(stateDir.resolve(EXTRA_FILE), extra);
+            System.out.println("📋 Chybí v Google Photos: " + missing.size() + " (" + MISSING_FILE + "), navíc: "
+                    + extra.size() + " (" + EXTRA_FILE + ")");
+            if (!complete) {
+                System.err.println("⚠️ Některá alba se nepodařilo porovnat, seznam není úplný");
+            }
+        }
+
+        System.out.println("📊 " + limiter);
+        System.out.println("📊 " + photosLimiter);
+        System.out.println("🎉 Hotovo!");
+    }
+
+    /**
+     * Porovná jeden photoset s albem; album bez záznamu v indexu znamená, že chybí všechno.
+     */
+    private static Diff reconcileSet(PhotosetPages pages, PhotosLibraryClient client, AdaptiveRateLimiter limiter,
+                                     Map<String, String> media, Photoset set, String albumId) throws Exception {
+        // obsah alba se stránkuje souběžně s photosetem, obě strany čekají hlavně na API
+        FutureTask<Map<String, String>> albumItems = new FutureTask<>(() -> listAlbum(client, limiter, albumId));
+        if (albumId != null) {
+            Thread.ofVirtual().name("album-" + set.getId()).start(albumItems);
+        }
+
+        List<FlickrItem> photos = new ArrayList<>();
+        pages.forEachPhoto(set.getId(), pages.fetch(set.getId(), 1), photo ->
+                photos.add(new FlickrItem(photo.getId(), FlickrDownloader.fileName(photo), media.get(photo.getId()))));
+
+        Map<String, String> google = Map.of();
+        if (albumId != null) {
+            try {
+                google = albumItems.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return diff(set.getId(), photos, google);
+    }
+
+    /**
+     * Hashované spojení photosetu s obsahem alba (media item id -> název souboru).
+     * Stejný název smí mít víc položek, každá položka alba se spáruje nejvýš s jednou fotkou.
+     */
+    static Diff diff(String setId, List<FlickrItem> photos, Map<String, String> google) {
+        Map<String, String> remaining = new LinkedHashMap<>(google);
+        Set<String> matched = new HashSet<>();
+        List<FlickrItem> unmatched = new ArrayList<>();
+
+        // 1. podle media item id - stejný obsah pod dvěma fotkami je v albu jen jednou
+        for (FlickrItem photo : photos) {
+            String mediaItemId = photo.mediaItemId();
+            if (mediaItemId != null && (remaining.remove(mediaItemId) != null || matched.contains(mediaItemId))) {
+                matched.add(mediaItemId);
+            } else {
+                unmatched.add(photo);
+            }
+        }
+
+        // 2. zbytek podle názvu souboru
+        Map<String, Deque<String>> byName = new HashMap<>();
+        remaining.forEach((id, name) -> byName.computeIfAbsent(name, n -> new ArrayDeque<>()).add(id));
+        List<Item> missing = new ArrayList<>();
+        for (FlickrItem photo : unmatched) {
+            Deque<String> candidates = byName.get(photo.fileName());
+            if (candidates != null && !candidates.isEmpty()) {
+                remaining.remove(candidates.poll());
+            } else {
+                missing.add(new Item(setId + "/" + photo.photoId(), photo.fileName()));
+            }
+        }
+
+        List<Item> extra = new ArrayList<>();
+        remaining.forEach((id, name) -> extra.add(new Item(setId + "/" + id, name)));
+        return new Diff(missing, extra);
+    }
+
+    /**
+     * Obsah alba po stránkách searchMediaItems; smazané album je prázdné.
+     */
+    private static Map<String, String> listAlbum(PhotosLibraryClient client, AdaptiveRateLimiter limiter,
+                                                 String albumId) throws InterruptedException {
+        Map<String, String> items = new LinkedHashMap<>();
+        SearchMediaItemsRequest request = SearchMediaItemsRequest.newBuilder()
+                .setAlbumId(albumId)
+                .setPageSize(SEARCH_PAGE_SIZE)
+                .build();
+        try {
+            SearchMediaItemsPage page = callWithRetry(limiter, () -> client.searchMediaItems(request).getPage());
+            while (true) {
+                page.getValues().forEach(item -> items.put(item.getId(), item.getFilename()));
+                if (!page.hasNextPage()) {
+                    return items;
+                }
+                SearchMediaItemsPage current = page;
+                page = callWithRetry(limiter, current::getNextPage);
+            }
+        } catch (ApiException e) {
+            if (e.getStatusCode().getCode() == StatusCode.Code.NOT_FOUND) {
+                System.err.println("  ⚠️ Album " + albumId + " v Google Photos neexistuje");
+                return Map.of();
+            }
+            throw e;
+        }
+    }
+
+    private static <T> T callWithRetry(AdaptiveRateLimiter limiter, Supplier<T> call) throws InterruptedException {
+        long backoff = BASE_BACKOFF;
+        for (int attempt = 1; ; attempt++) {
+            limiter.acquire();
+            try {
+                T resp = call.get();
+                limiter.onSuccess();
+                return resp;
+            } catch (ApiException e) {
+                if (attempt >= MAX_RETRIES || !GooglePhotosUploader.isQuotaError(e)) {
+                    throw e;
+                }
+                limiter.onThrottle(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    /**
+     * Zapíše seznam ve formátu ContentIndex (klíč\tnázev) atomicky přes dočasný soubor.
+     */
+    private static void write(Path file, List<Item> items) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Item item : items) {
+                writer.write(item.key() + "\t" + item.fileName() + "\n");
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
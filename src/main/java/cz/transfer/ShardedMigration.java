@@ -0,0 +1,379 @@
+package cz.transfer;
+
+import com.flickr4java.flickr.Flickr;
+import com.flickr4java.flickr.RequestContext;
+import com.flickr4java.flickr.auth.Auth;
+import com.flickr4java.flickr.photosets.Photoset;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.PhotosLibrarySettings;
+import cz.flickrdownloader.FlickrAuth;
+import cz.flickrdownloader.FlickrDownloader;
+import cz.flickrdownloader.PhotosetPages;
+import cz.googleuploader.AlbumIndex;
+import cz.googleuploader.GooglePhotosAuth;
+import cz.googleuploader.GooglePhotosUploader;
+import cz.googleuploader.TokenManager;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.ContentIndex;
+import cz.util.Http;
+import cz.util.ItemLog;
+import cz.util.LeaseStore;
+import cz.util.Metrics;
+import cz.util.ProgressStore;
+import cz.util.SyncMarks;
+import cz.util.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+
+/**
+ * Přenos jednoho velkého účtu rozdělený mezi víc procesů, klidně na různých strojích.
+ * Všechny sdílí adresář účtu se stejným obsahem jako u BatchMigration (flickr.properties,
+ * tokens/ a stav FlickrToGooglePhotos).
+ * <p>
+ * Jednotkou práce je úsek alba po -Df2g.shardPages stránkách (výchozí 10 = 5000 fotek), takže
+ * se dělí i jedno obří album. Úseky se přidělují přes leasy v leases/ (LeaseStore), úsek uzlu,
+ * který přestal obnovovat lease, převezme po -Df2g.leaseSeconds (výchozí 300) jiný uzel.
+ * Každý uzel zapisuje průběh do vlastních logů v nodes/uzel/; převzatý úsek přeskočí fotky
+ * hotové u kteréhokoli uzlu. Album zakládá jen jeden uzel a id sdílí přes albums/id_photosetu.
+ * Po skončení uzel sloučí logy všech uzlů do stavových souborů účtu, takže na ně naváže
+ * i obyčejný FlickrToGooglePhotos.
+ * <p>
+ * Vyzkoušet lze několika procesy nad stejným adresářem s různými názvy uzlů.
+ */
+public class ShardedMigration {
+
+    private static final int SHARD_PAGES = Integer.getInteger("f2g.shardPages", 10);
+    private static final long LEASE_TTL_MS = 1000L * Integer.getInteger("f2g.leaseSeconds", 300);
+    private static final long POLL_MS = 5_000;   // čekání na úseky, které drží jiné uzly
+    private static final String MERGE = "merge"; // lease na slučování průběhu
+    private static final long MERGE_WAIT_MS = 2 * LEASE_TTL_MS; // déle než ttl - lease mrtvého uzlu se mezitím převezme
+
+    /**
+     * Úsek alba: stránky fromPage..toPage, poslední úsek běží do konce alba.
+     */
+    record Unit(String id, Photoset set, int fromPage, int toPage) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5 || args.length > 7) {
+            System.err.println("Použití: java ShardedMigration <sdílený adresář účtu>, <název uzlu>, API_KEY, API_SECRET, "
+                    + "<cesta_k_client_secret.json>, [ignoreAutoUpload], [workers]");
+            System.exit(1);
+        }
+
+        Path sharedDir = Paths.get(args[0]);
+        String node = args[1];
+        var apiKey = args[2];
+        var apiSecret = args[3];
+        var clientSecretPath = args[4];
+        var ignoreAutoUpload = args.length > 5 && Boolean.parseBoolean(args[5]);
+        var workers = args.length > 6 ? Integer.parseInt(args[6]) : FlickrToGooglePhotos.DEFAULT_WORKERS;
+        if (!node.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Název uzlu smí obsahovat jen písmena, číslice, '.', '_' a '-': " + node);
+        }
+
+        Path nodeDir = sharedDir.resolve("nodes").resolve(node);
+        Files.createDirectories(nodeDir);
+        Files.createDirectories(sharedDir.resolve("albums"));
+
+        Utils.ignoreCert(); // 1. (Test) Vypnutí validace SSL certifikátů
+
+        Flickr flickr = FlickrAuth.connect(apiKey, apiSecret, sharedDir.resolve("flickr.properties"));
+        Auth auth = flickr.getAuth();
+        RequestContext.getRequestContext().setAuth(auth);
+        TokenManager tokens = new TokenManager(GooglePhotosAuth.loadCredentials(
+                clientSecretPath, sharedDir.resolve("tokens").toFile()));
+
+        AdaptiveRateLimiter limiter = FlickrToGooglePhotos.flickrLimiter();
+        AdaptiveRateLimiter uploadLimiter = FlickrToGooglePhotos.photosLimiter();
+
+        List<Photoset> sets = FlickrDownloader.listPhotosets(flickr, limiter, auth.getUser().getId());
+        List<Unit> units = plan(sharedDir, sets, ignoreAutoUpload);
+        System.out.println("🧩 Uzel " + node + ", úseků ke zpracování: " + units.size());
+
+        PhotosLibrarySettings settings = PhotosLibrarySettings.newBuilder()
+                .setCredentialsProvider(tokens::credentials)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, Thread.ofVirtual().name("transfer-", 0).factory());
+        Metrics.gauge("f2g_queue_depth{queue=\"transfer\"}", () -> ((ThreadPoolExecutor) executor).getQueue().size());
+        Metrics.start();
+
+        try (LeaseStore leases = new LeaseStore(sharedDir.resolve("leases"), node, LEASE_TTL_MS)) {
+            try (ProgressStore photos = ProgressStore.open(nodeDir.resolve(FlickrToGooglePhotos.PHOTOS_FILE).toString());
+                 ContentIndex media = ContentIndex.open(nodeDir.resolve(FlickrToGooglePhotos.MEDIA_FILE).toString());
+                 PhotosLibraryClient client = PhotosLibraryClient.initialize(settings);
+                 AlbumIndex albumIndex = new AlbumIndex(client, nodeDir.resolve(GooglePhotosUploader.ALBUM_INDEX).toString())) {
+                var transfer = new FlickrToGooglePhotos.Transfer(flickr, auth, limiter, uploadLimiter, Http.client(),
+                        tokens, GooglePhotosUploader.UPLOAD_URL, client, new PhotosetPages(flickr, auth, limiter),
+                        executor, null, Set.of());
+                Map<String, String> knownAlbums = ContentIndex.snapshot(
+                        sharedDir.resolve(GooglePhotosUploader.ALBUM_INDEX).toString());
+
+                Set<String> failed = new HashSet<>();
+                while (true) {
+                    boolean waiting = false;
+                    for (Unit unit : units) {
+                        if (failed.contains(unit.id()) || leases.isDone(unit.id())) {
+                            continue;
+                        }
+                        if (!leases.tryClaim(unit.id())) {
+                            waiting = true; // drží ho jiný uzel - po jeho pádu ho převezmeme
+                            continue;
+                        }
+                        boolean ok;
+                        try {
+                            String albumId = albumId(sharedDir, leases, albumIndex, knownAlbums, unit.set());
+                            ok = transferUnit(transfer, sharedDir, nodeDir, leases, unit, albumId, photos, media);
+                        } catch (Exception e) {
+                            System.err.println("❌ Chyba úseku " + unit.id() + ": " + e.getMessage());
+                            ok = false;
+                        }
+                        if (!leases.isHeld(unit.id())) {
+                            // lease převzal jiný uzel - úsek dokončí on, případně ho po jeho pádu vezmeme znovu
+                            System.err.println("⚠️ Úsek " + unit.id() + " převzal jiný uzel, nechávám ho jemu");
+                            waiting = true;
+                        } else if (ok) {
+                            leases.complete(unit.id());
+                        } else {
+                            // ostatní uzly to zkusí taky, tento už ne
+                            failed.add(unit.id());
+                            leases.release(unit.id());
+                        }
+                    }
+                    if (!waiting) {
+                        break;
+                    }
+                    Thread.sleep(POLL_MS);
+                }
+                if (!failed.isEmpty()) {
+                    System.err.println("⚠️ Nedokončené úseky: " + failed.size() + ", doběhnou při dalším spuštění");
+                }
+            }
+            merge(sharedDir, leases, units);
+        } finally {
+            Metrics.stop();
+            ItemLog.flush();
+            executor.shutdown();
+            tokens.close();
+        }
+
+        System.out.println("📊 " + limiter);
+        System.out.println("📊 " + uploadLimiter);
+        System.out.println("🎉 Hotovo!");
+    }
+
+    /**
+     * Úseky alb, která se od posledního přenosu změnila. Id úseku obsahuje verzi alba,
+     * změněné album se tak rozdělí znovu a hotové úseky staré verze se nepočítají.
+     */
+    static List<Unit> plan(Path sharedDir, List<Photoset> sets, boolean ignoreAutoUpload) throws IOException {
+        SyncMarks marks = SyncMarks.open(sharedDir.resolve(FlickrToGooglePhotos.MARKS_FILE).toString());
+        Set<String> transferredAlbums = new HashSet<>();
+        forEachKey(sharedDir.resolve(FlickrToGooglePhotos.ALBUMS_FILE), "", transferredAlbums::add);
+
+        List<Unit> units = new ArrayList<>();
+        for (Photoset set : sets) {
+            String dirName = Utils.sanitizeName(set.getTitle());
+            String version = set.getDateUpdate();
+            if (version != null ? marks.unchanged(set.getId(), version) : transferredAlbums.contains(set.getId())) {
+                continue;
+            }
+            if (ignoreAutoUpload && "Auto_Upload".equals(dirName)) {
+                continue;
+            }
+            int count = set.getPhotoCount() + set.getVideoCount();
+            int pages = Math.max(1, (count + PhotosetPages.PER_PAGE - 1) / PhotosetPages.PER_PAGE);
+            for (int from = 1; from <= pages; from += SHARD_PAGES) {
+                int to = from + SHARD_PAGES - 1 >= pages ? Integer.MAX_VALUE : from + SHARD_PAGES - 1;
+                units.add(new Unit(set.getId() + "_" + (version != null ? version : "0") + "_" + from, set, from, to));
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Id alba pro photoset. Album zakládá jen držitel lease na album, ostatní uzly počkají
+     * na jeho zápis do albums/.
+     */
+    private static String albumId(Path sharedDir, LeaseStore leases, AlbumIndex albumIndex,
+                                  Map<String, String> knownAlbums, Photoset set) throws Exception {
+        Path registry = sharedDir.resolve("albums").resolve(set.getId());
+        String lease = "album_" + set.getId();
+        while (true) {
+            if (Files.exists(registry)) {
+                return Files.readString(registry, StandardCharsets.UTF_8).strip();
+            }
+            if (leases.tryClaim(lease)) {
+                try {
+                    if (!Files.exists(registry)) {
+                        // album z dřívějšího běhu jednoho uzlu, jinak nové
+                        String entry = knownAlbums.get("set:" + set.getId());
+                        String albumId = entry != null
+                                ? entry.substring(0, entry.indexOf('\t'))
+                                : albumIndex.albumIdFor("set:" + set.getId(),
+                                Utils.sanitizeName(set.getTitle()).replaceAll("_", " "));
+                        Path tmp = registry.resolveSibling(set.getId() + ".tmp");
+                        Files.writeString(tmp, albumId, StandardCharsets.UTF_8);
+                        Files.move(tmp, registry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } finally {
+                    leases.release(lease);
+                }
+            } else {
+                Thread.sleep(1_000);
+            }
+        }
+    }
+
+    /**
+     * Přenese jeden úsek. Fotky hotové u jiných uzlů (i u uzlu, po kterém úsek přebíráme)
+     * se načtou z jejich logů a přeskočí. Když lease úseku převezme jiný uzel, další fotky
+     * se už nezačnou.
+     */
+    private static boolean transferUnit(FlickrToGooglePhotos.Transfer transfer, Path sharedDir, Path nodeDir,
+                                        LeaseStore leases, Unit unit, String albumId,
+                                        ProgressStore photos, ContentIndex media) throws Exception {
+        String setId = unit.set().getId();
+        Set<String> elsewhere = new HashSet<>();
+        forEachKey(sharedDir.resolve(FlickrToGooglePhotos.PHOTOS_FILE), setId + "/", elsewhere::add);
+        try (DirectoryStream<Path> nodes = Files.newDirectoryStream(sharedDir.resolve("nodes"))) {
+            for (Path other : nodes) {
+                if (!other.equals(nodeDir)) {
+                    forEachKey(other.resolve(FlickrToGooglePhotos.PHOTOS_FILE), setId + "/", elsewhere::add);
+                }
+            }
+        }
+
+        System.out.println("📁 " + unit.set().getTitle() + ": stránky " + unit.fromPage() + "-"
+                + (unit.toPage() == Integer.MAX_VALUE ? "konec" : unit.toPage()));
+        return FlickrToGooglePhotos.transferPages(transfer, setId, albumId, unit.fromPage(), unit.toPage(),
+                new SharedProgress(photos, elsewhere), media, () -> !leases.isHeld(unit.id()));
+    }
+
+    /**
+     * Sloučí logy všech uzlů do stavových souborů účtu a hotová alba zapíše jako přenesená.
+     * Slučování je idempotentní, běží pod leasem, aby do souborů nezapisovaly dva uzly najednou.
+     * Když slučuje jiný uzel, počká se na něj - jeho sloučení nemusí obsahovat úseky dokončené
+     * tímto uzlem a hotová alba podle plánu tohoto uzlu.
+     */
+    private static void merge(Path sharedDir, LeaseStore leases, List<Unit> units)
+            throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + MERGE_WAIT_MS;
+        if (!leases.tryClaim(MERGE)) {
+            System.out.println("⏳ Průběh právě slučuje jiný uzel, čekám");
+        }
+        while (!leases.isHeld(MERGE) && !leases.tryClaim(MERGE)) {
+            if (System.currentTimeMillis() > deadline) {
+                System.err.println("⚠️ Průběh slučuje jiný uzel déle než " + MERGE_WAIT_MS / 1000
+                        + " s, průběh tohoto uzlu se sloučí při dalším spuštění");
+                return;
+            }
+            Thread.sleep(POLL_MS);
+        }
+        try (ProgressStore photos = ProgressStore.open(sharedDir.resolve(FlickrToGooglePhotos.PHOTOS_FILE).toString());
+             ContentIndex media = ContentIndex.open(sharedDir.resolve(FlickrToGooglePhotos.MEDIA_FILE).toString());
+             ContentIndex albumIndex = ContentIndex.open(sharedDir.resolve(GooglePhotosUploader.ALBUM_INDEX).toString());
+             ProgressStore albums = ProgressStore.open(sharedDir.resolve(FlickrToGooglePhotos.ALBUMS_FILE).toString())) {
+            try (DirectoryStream<Path> nodes = Files.newDirectoryStream(sharedDir.resolve("nodes"))) {
+                for (Path node : nodes) {
+                    forEachKey(node.resolve(FlickrToGooglePhotos.PHOTOS_FILE), "", photos::add);
+                    ContentIndex.snapshot(node.resolve(FlickrToGooglePhotos.MEDIA_FILE).toString()).forEach(media::put);
+                }
+            }
+            try (DirectoryStream<Path> registry = Files.newDirectoryStream(sharedDir.resolve("albums"))) {
+                for (Path file : registry) {
+                    if (file.getFileName().toString().endsWith(".tmp")) {
+                        continue;
+                    }
+                    String key = "set:" + file.getFileName();
+                    String albumId = Files.readString(file, StandardCharsets.UTF_8).strip();
+                    String entry = albumIndex.get(key);
+                    if (entry == null || !entry.startsWith(albumId + "\t")) {
+                        albumIndex.put(key, albumId + "\t" + System.currentTimeMillis());
+                    }
+                }
+            }
+
+            // album je přenesené, až když jsou hotové všechny jeho úseky
+            SyncMarks marks = SyncMarks.open(sharedDir.resolve(FlickrToGooglePhotos.MARKS_FILE).toString());
+            Set<String> incomplete = new HashSet<>();
+            for (Unit unit : units) {
+                if (!leases.isDone(unit.id())) {
+                    incomplete.add(unit.set().getId());
+                }
+            }
+            for (Unit unit : units) {
+                Photoset set = unit.set();
+                if (!incomplete.contains(set.getId())) {
+                    albums.add(set.getId());
+                    marks.put(set.getId(), set.getDateUpdate());
+                }
+            }
+            System.out.println("🔀 Průběh uzlů sloučen, nedokončených alb: " + incomplete.size());
+        } finally {
+            leases.release(MERGE);
+        }
+    }
+
+    /**
+     * Klíče z logu průběhu (jeden na řádek) začínající prefixem. Do souboru může zároveň
+     * zapisovat jiný uzel, neúplný poslední řádek se proto přeskočí.
+     */
+    private static void forEachKey(Path file, String prefix, Consumer<String> action) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty() && line.startsWith(prefix)) {
+                action.accept(line);
+            }
+        }
+    }
+
+    /**
+     * Průběh uzlu doplněný o fotky hotové jinde; zapisuje se jen do logu uzlu.
+     */
+    private record SharedProgress(ProgressStore local, Set<String> elsewhere) implements ProgressStore {
+
+        @Override
+        public boolean contains(String key) {
+            return local.contains(key) || elsewhere.contains(key);
+        }
+
+        @Override
+        public void add(String key) {
+            local.add(key);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            local.flush();
+        }
+
+        @Override
+        public void close() {
+            // log uzlu zavírá main
+        }
+    }
+}
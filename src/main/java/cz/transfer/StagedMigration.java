@@ -0,0 +1,94 @@
+package cz.transfer;
+
+import com.flickr4java.flickr.Flickr;
+import cz.flickrdownloader.FlickrAuth;
+import cz.flickrdownloader.FlickrDownloader;
+import cz.googleuploader.GooglePhotosAuth;
+import cz.googleuploader.GooglePhotosUploader;
+import cz.googleuploader.TokenManager;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.DiskBudget;
+import cz.util.ItemLog;
+import cz.util.Metrics;
+import cz.util.ProgressStore;
+import cz.util.Utils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Dvoukrokový přenos (FlickrDownloader + GooglePhotosUploader) s oběma kroky najednou
+ * nad jedním staging adresářem. Stahování se pozastaví, když ve stagingu leží limit GB;
+ * uploader strom prochází opakovaně a každý soubor po založení v albu (zápis do
+ * uploaded_files.txt) smaže. Knihovna libovolné velikosti tak projde přes malý disk.
+ * <p>
+ * Stavové soubory obou kroků jsou stejné jako při samostatném spuštění, přerušený běh
+ * jde dokončit i samostatným GooglePhotosUploaderem.
+ */
+public class StagedMigration {
+
+    private static final int DEFAULT_DOWNLOAD_WORKERS = 8;
+    private static final int DEFAULT_UPLOAD_WORKERS = 4;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5 || args.length > 8) {
+            System.err.println("Použití: java StagedMigration API_KEY, API_SECRET, <cesta_k_client_secret.json>, "
+                    + "<staging adresář>, <limit GB>, [ignoreAutoUpload], [download workers], [upload workers]");
+            System.exit(1);
+        }
+
+        var apiKey = args[0];
+        var apiSecret = args[1];
+        var clientSecretPath = args[2];
+        Path stagingDir = Paths.get(args[3]);
+        long highWater = (long) (Double.parseDouble(args[4]) * 1024 * 1024 * 1024);
+        var ignoreAutoUpload = args.length > 5 && Boolean.parseBoolean(args[5]);
+        var downloadWorkers = args.length > 6 ? Integer.parseInt(args[6]) : DEFAULT_DOWNLOAD_WORKERS;
+        var uploadWorkers = args.length > 7 ? Integer.parseInt(args[7]) : DEFAULT_UPLOAD_WORKERS;
+
+        Utils.ignoreCert(); // 1. (Test) Vypnutí validace SSL certifikátů
+
+        Flickr flickr = FlickrAuth.connect(apiKey, apiSecret);
+        TokenManager tokens = new TokenManager(GooglePhotosAuth.loadCredentials(clientSecretPath));
+
+        Files.createDirectories(stagingDir);
+        DiskBudget budget = new DiskBudget(stagingDir, highWater);
+        System.out.println("💾 " + budget);
+
+        AdaptiveRateLimiter limiter = FlickrToGooglePhotos.flickrLimiter();
+        // nahrané soubory zná i stahování - duplicitu, jejíž zdroj už upload smazal, stáhne znovu
+        var uploadedFiles = ProgressStore.open(GooglePhotosUploader.UPLOADED_FILES);
+
+        FutureTask<Void> download = new FutureTask<>(() -> {
+            FlickrDownloader.download(flickr, limiter, stagingDir, ignoreAutoUpload, downloadWorkers,
+                    budget, uploadedFiles);
+            return null;
+        });
+
+        Metrics.start();
+        try {
+            Thread.ofVirtual().name("staged-download").start(download);
+            try {
+                GooglePhotosUploader.upload(stagingDir, tokens, uploadWorkers, uploadedFiles, budget,
+                        () -> !download.isDone());
+            } finally {
+                budget.close(); // stahování čekající na místo skončí chybou, místo aby viselo
+            }
+            download.get();
+        } catch (ExecutionException e) {
+            System.err.println("❌ Stahování selhalo: " + e.getCause());
+            throw e;
+        } finally {
+            Metrics.stop();
+            ItemLog.flush();
+            tokens.close();
+            uploadedFiles.close();
+        }
+
+        System.out.println("📊 " + limiter);
+        System.out.println("🎉 Hotovo!");
+    }
+}
@@ -0,0 +1,91 @@
+package cz.transfer;
+
+import com.flickr4java.flickr.Flickr;
+import com.flickr4java.flickr.REST;
+import com.flickr4java.flickr.RequestContext;
+import com.flickr4java.flickr.auth.Auth;
+import com.flickr4java.flickr.auth.Permission;
+import com.flickr4java.flickr.people.User;
+import com.flickr4java.flickr.photosets.Photoset;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.UserCredentials;
+import com.google.photos.library.v1.PhotosLibraryClient;
+import com.google.photos.library.v1.PhotosLibrarySettings;
+import cz.flickrdownloader.FlickrDownloader;
+import cz.googleuploader.TokenManager;
+import cz.util.AdaptiveRateLimiter;
+import cz.util.Http;
+import cz.util.Utils;
+import okhttp3.OkHttpClient;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Studený start až po první volání API, bez přihlášení a bez stavových souborů. Slouží jako
+ * trénovací běh AppCDS archivů (mvn -Pappcds package) a jako měřený proces StartupBenchmarku.
+ * <p>
+ * Inicializuje stejné vrstvy jako FlickrDownloader, GooglePhotosUploader i FlickrToGooglePhotos
+ * (flickr4java, OkHttp, google-auth, gRPC/Netty klient Photos API) a zavolá photosets.getList.
+ * Chybová odpověď nebo nedostupný server se počítá taky - do archivu se dostanou i třídy
+ * chybové cesty. Flickr API jde přesměrovat přes -Df2g.flickrUrl (výchozí https://api.flickr.com).
+ */
+public class StartupProbe {
+
+    private static final URI FLICKR_URL = URI.create(System.getProperty("f2g.flickrUrl", "https://api.flickr.com"));
+
+    public static void main(String[] args) throws Exception {
+        Utils.ignoreCert(); // 1. (Test) Vypnutí validace SSL certifikátů
+
+        // REST skládá URL jako scheme://host/path, případný port patří do hostu
+        REST rest = new REST(FLICKR_URL.getAuthority());
+        rest.setScheme(FLICKR_URL.getScheme());
+        Flickr flickr = new Flickr("probe", "probe", rest);
+        User user = new User();
+        user.setId("probe");
+        Auth auth = new Auth(Permission.READ, user);
+        auth.setToken("probe");
+        auth.setTokenSecret("probe");
+        RequestContext.getRequestContext().setAuth(auth);
+
+        AdaptiveRateLimiter limiter = FlickrToGooglePhotos.flickrLimiter();
+        OkHttpClient http = Http.client();
+
+        // platný token - TokenManager ani klient Photos API nebudou volat token endpoint
+        UserCredentials credentials = UserCredentials.newBuilder()
+                .setClientId("probe")
+                .setClientSecret("probe")
+                .setRefreshToken("probe")
+                .setAccessToken(new AccessToken("probe", new Date(System.currentTimeMillis() + 3_600_000)))
+                .build();
+
+        try (TokenManager tokens = new TokenManager(credentials);
+             PhotosLibraryClient client = PhotosLibraryClient.initialize(PhotosLibrarySettings.newBuilder()
+                     .setCredentialsProvider(tokens::credentials)
+                     .build())) {
+            long initialized = sinceStart();
+            String result;
+            try {
+                List<Photoset> sets = FlickrDownloader.listPhotosets(flickr, limiter, user.getId());
+                result = "alb: " + sets.size();
+            } catch (Exception e) {
+                result = e.getClass().getSimpleName() + ": " + e.getMessage();
+            }
+            System.out.println("⏱️ Inicializace " + initialized + " ms, první volání API " + sinceStart()
+                    + " ms od startu procesu (" + result + ")");
+        } finally {
+            http.dispatcher().executorService().shutdown();
+            http.connectionPool().evictAll();
+        }
+    }
+
+    private static long sinceStart() {
+        Instant start = ProcessHandle.current().info().startInstant()
+                .orElseGet(() -> Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()));
+        return Duration.between(start, Instant.now()).toMillis();
+    }
+}
@@ -0,0 +1,165 @@
+package cz.util;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RateLimiter sdílený všemi workery, který si rychlost řídí sám (AIMD):
+ * každá úspěšná odpověď rychlost mírně zvýší, 429 / Retry-After / quota chyba ji
+ * sníží na polovinu a všechny workery pozdrží až do konce Retry-After.
+ * <p>
+ * Souběžné workery dostanou 429 většinou najednou - rychlost se proto sníží nanejvýš
+ * jednou za okno pauzy (aspoň DECREASE_WINDOW_MS); throttling uprostřed okna pauzu
+ * jen prodlouží.
+ */
+public class AdaptiveRateLimiter {
+
+    private static final double INCREASE_PER_SECOND = 0.1; // aditivní nárůst permitů/s za sekundu úspěchů
+    private static final double DECREASE_FACTOR = 0.5;     // multiplikativní pokles při throttlingu
+    private static final long DECREASE_WINDOW_MS = 1_000;  // nejkratší odstup dvou poklesů
+
+    // kolik limiterů daného jména už vzniklo - label instance odliší jejich metriky
+    private static final ConcurrentHashMap<String, AtomicInteger> INSTANCES = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final double minRate;
+    private final double maxRate;
+    private final RateLimiter limiter;
+
+    private double rate;
+    private volatile long pausedUntilNanos = System.nanoTime();
+    private long decreaseWindowEndNanos = System.nanoTime();
+
+    private final LongAdder throttleEvents;
+    private final LongAdder blockedNanos = new LongAdder();
+
+    private AdaptiveRateLimiter(String name, String label, double initialRate, double minRate, double maxRate) {
+        this.name = name;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.rate = initialRate;
+        this.limiter = RateLimiter.create(initialRate);
+        this.throttleEvents = Metrics.counter("f2g_throttled_total" + label);
+    }
+
+    /**
+     * Vytvoří limiter a zaregistruje jeho metriky (rychlost a celkový čas čekání workerů) -
+     * mimo konstruktor, aby gauge nedostal rozpracovaný objekt.
+     * <p>
+     * Série mají labely limiter a instance (0, 1, ... v pořadí vytvoření), takže druhý limiter
+     * se stejným jménem metriky prvního nepřepíše.
+     */
+    public static AdaptiveRateLimiter create(String name, double initialRate, double minRate, double maxRate) {
+        int instance = INSTANCES.computeIfAbsent(name, n -> new AtomicInteger()).getAndIncrement();
+        String label = "{limiter=\"" + name + "\",instance=\"" + instance + "\"}";
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(name, label, initialRate, minRate, maxRate);
+        Metrics.gauge("f2g_limiter_rate" + label, limiter::getRate);
+        Metrics.gauge("f2g_limiter_blocked_seconds_total" + label, () -> limiter.blockedNanos.sum() / 1e9);
+        return limiter;
+    }
+
+    /**
+     * Počká na případnou globální pauzu a na permit.
+     */
+    public void acquire() throws InterruptedException {
+        long start = System.nanoTime();
+        sleepUntilResumed();
+        limiter.acquire();
+        blockedNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Počká jen na konec globální pauzy po throttlingu, permit nespotřebuje
+     * (pro přenosy, které limitované nejsou, ale backoff respektovat mají).
+     */
+    public void awaitPause() throws InterruptedException {
+        long start = System.nanoTime();
+        sleepUntilResumed();
+        blockedNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Čekání na konec pauzy bez započítání do blockedNanos - to dělá volající, jednou za celé čekání.
+     */
+    private void sleepUntilResumed() throws InterruptedException {
+        long wait;
+        while ((wait = pausedUntilNanos - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (rate < maxRate) {
+            // +INCREASE_PER_SECOND za každou sekundu úspěšných volání
+            setRate(rate + INCREASE_PER_SECOND / rate);
+        }
+    }
+
+    /**
+     * Zpětná vazba od serveru: sníží rychlost a pozastaví všechny workery.
+     *
+     * @param retryAfterMillis jak dlouho server chce, abychom nevolali
+     */
+    public synchronized void onThrottle(long retryAfterMillis) {
+        throttleEvents.increment();
+        long now = System.nanoTime();
+        pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        if (now - decreaseWindowEndNanos < 0) {
+            return; // odpověď na požadavek z doby před posledním poklesem
+        }
+        setRate(rate * DECREASE_FACTOR);
+        decreaseWindowEndNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(DECREASE_WINDOW_MS));
+        System.err.println("  ⚠️ " + name + ": throttling, nová rychlost " + String.format("%.2f", rate)
+                + "/s, pauza " + retryAfterMillis + " ms");
+    }
+
+    private void setRate(double newRate) {
+        rate = Math.max(minRate, Math.min(maxRate, newRate));
+        limiter.setRate(rate);
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public long getThrottleEvents() {
+        return throttleEvents.sum();
+    }
+
+    public long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: rate=%.2f/s, throttled=%d, blocked=%d ms",
+                name, getRate(), getThrottleEvents(), getBlockedMillis());
+    }
+
+    /**
+     * Převede hlavičku Retry-After (sekundy nebo HTTP datum) na milisekundy.
+     */
+    public static long parseRetryAfter(String retryAfter, long fallbackMillis) {
+        if (retryAfter == null) {
+            return fallbackMillis;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), at).toMillis());
+            } catch (DateTimeParseException ex) {
+                return fallbackMillis;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cz.util;
+
+import com.google.common.util.concurrent.RateLimiter;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+import java.io.IOException;
+
+/**
+ * Globální limit přenosové rychlosti v bajtech za sekundu, sdílený všemi přenosy.
+ * Permity se berou po každém přečteném bloku, takže se rychlost dělí mezi souběžné
+ * přenosy zhruba rovným dílem.
+ */
+public class Bandwidth {
+
+    private final RateLimiter limiter;
+
+    public Bandwidth(long bytesPerSecond) {
+        this.limiter = RateLimiter.create(bytesPerSecond);
+    }
+
+    /**
+     * Obalí zdroj tak, aby čtení z něj respektovalo limit; null = bez limitu.
+     */
+    public static Source limit(Bandwidth bandwidth, Source source) {
+        if (bandwidth == null) {
+            return source;
+        }
+        return new ForwardingSource(source) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    bandwidth.limiter.acquire((int) read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Vybere permity za bajty, které přenese někdo jiný (knihovna čte soubor sama);
+     * null = bez limitu.
+     */
+    public static void acquire(Bandwidth bandwidth, long bytes) {
+        if (bandwidth == null) {
+            return;
+        }
+        for (long left = bytes; left > 0; left -= Integer.MAX_VALUE) {
+            bandwidth.limiter.acquire((int) Math.min(left, Integer.MAX_VALUE));
+        }
+    }
+
+    public double getBytesPerSecond() {
+        return limiter.getRate();
+    }
+}
@@ -0,0 +1,137 @@
+package cz.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Perzistentní mapa klíč -> hodnota jako append-only log řádků "klíč\thodnota".
+ * Pozdější záznam přepisuje dřívější, neúplný poslední řádek po pádu se zahodí a přepsané
+ * záznamy se při otevření kompaktují stejně jako v LogProgressStore.
+ * Používá se pro obsahový index (id fotky / SHA-256 -> soubor / media item).
+ * <p>
+ * put() se nefsyncuje: volající zapisuje index vždy před záznamem do ProgressStore, takže po
+ * pádu procesu je řádek v page cache dřív, než group commit progress souboru udělá fsync.
+ * Jen pád systému může ztratit konec indexu u už zapsaného progressu - pak chybí zkratka
+ * (duplicita se stáhne / nahraje znovu), ne data. Na disk se index vynutí při close().
+ */
+public class ContentIndex implements AutoCloseable {
+
+    private static final double COMPACT_RATIO = 1.5; // kompaktujeme, když je třetina řádků přepsaná
+
+    private final Path path;
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    private final FileChannel channel;
+
+    private ContentIndex(Path path) throws IOException {
+        this.path = path;
+        if (Files.exists(path)) {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long validLength = LogProgressStore.lastNewline(ch) + 1;
+                if (validLength < ch.size()) {
+                    System.err.println("Zahazuji neúplný záznam na konci " + path);
+                    ch.truncate(validLength);
+                }
+            }
+            long records = 0;
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        entries.put(line.substring(0, tab), line.substring(tab + 1));
+                        records++;
+                    }
+                }
+            }
+            if (records > entries.size() * COMPACT_RATIO) {
+                compact();
+            }
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Přepíše log jen s aktuálními hodnotami (atomicky přes dočasný soubor).
+     */
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Zkompaktován " + path + " (" + entries.size() + " záznamů)");
+    }
+
+    public static ContentIndex open(String filePath) throws IOException {
+        return new ContentIndex(Paths.get(filePath));
+    }
+
+    /**
+     * Přečte soubor bez otevření pro zápis - do souboru může zároveň zapisovat jiná instance,
+     * nic se neořezává a neúplný poslední řádek se jen přeskočí.
+     */
+    public static Map<String, String> snapshot(String filePath) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        Path path = Paths.get(filePath);
+        if (!Files.exists(path)) {
+            return entries;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                entries.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+        return entries;
+    }
+
+    public String get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, String value) {
+        if (value.equals(entries.put(key, value))) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.wrap((key + "\t" + value + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            System.err.println("Chyba při zápisu do souboru " + path + ": " + e.getMessage());
+        }
+    }
+
+    public void forEach(BiConsumer<String, String> action) {
+        entries.forEach(action);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,169 @@
+package cz.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Místo na staging disku sdílené stahováním a uploadem. Stahování před každým souborem
+ * počká, dokud je ve stromu méně než highWater bajtů; upload po založení položky soubor
+ * smaže a místo uvolní. Rozpracovaná stahování se nepřerušují, takže limit se může
+ * překročit nanejvýš o soubory, které už běží.
+ * <p>
+ * Počítají se jen soubory, které upload ještě může uvolnit. Soubor, který upload přeskočí
+ * nebo nenahraje, se přestane počítat (discharge) a zůstane na disku pro další běh - jinak
+ * by stahování čekalo na místo, které nikdo neuvolní. Když se místo neuvolní ani za
+ * f2g.stagingStallMinutes nebo upload skončí (close), awaitRoom skončí výjimkou.
+ * <p>
+ * Zámek je ReentrantLock, aby čekající virtuální vlákna neblokovala carrier.
+ */
+public class DiskBudget implements AutoCloseable {
+
+    private static final long STALL_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong("f2g.stagingStallMinutes", 30));
+
+    private final long highWater;
+    private final Map<Path, Long> charged = new ConcurrentHashMap<>();
+    private final AtomicLong used = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private volatile long lastRelease = System.nanoTime();
+    private volatile String abandoned;
+
+    /**
+     * @param dir       staging adresář, fotky a videa v něm z předchozího běhu se započítají
+     * @param highWater kolik bajtů smí ve stromu ležet, než se stahování pozastaví
+     */
+    public DiskBudget(Path dir, long highWater) throws IOException {
+        if (highWater <= 0) {
+            throw new IllegalArgumentException("Limit stagingu musí být kladný: " + highWater);
+        }
+        this.highWater = highWater;
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.forEach(file -> {
+                    // .part, .tmp a ostatní soubory bez přípony fotky/videa upload nenahraje ani nesmaže
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(".") || MediaTypes.byExtension(name) == null) {
+                        return;
+                    }
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                        if (attrs.isRegularFile()) {
+                            add(file, attrs.size());
+                        }
+                    } catch (IOException e) {
+                        // soubor mezitím zmizel
+                    }
+                });
+            }
+        }
+        Metrics.gauge("f2g_staging_bytes", used::get);
+    }
+
+    /**
+     * Blokuje, dokud je staging plný.
+     *
+     * @throws IllegalStateException upload skončil nebo za f2g.stagingStallMinutes neuvolnil nic
+     */
+    public void awaitRoom() throws InterruptedException {
+        checkAbandoned();
+        if (used.get() < highWater) {
+            return;
+        }
+        lock.lockInterruptibly();
+        try {
+            if (used.get() >= highWater) {
+                System.out.println("⏸️ Staging plný (" + used.get() / (1024 * 1024) + " MB), stahování čeká na upload");
+            }
+            long waitStart = System.nanoTime();
+            while (used.get() >= highWater) {
+                checkAbandoned();
+                long idle = System.nanoTime() - Math.max(lastRelease, waitStart);
+                if (idle >= STALL_NANOS) {
+                    abandoned = "upload neuvolnil místo za " + TimeUnit.NANOSECONDS.toMinutes(idle) + " min";
+                    released.signalAll();
+                    checkAbandoned();
+                }
+                released.await(STALL_NANOS - idle, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Započítá nově stažený (nebo nalinkovaný) soubor pod jeho konečnou cestou. Volá se
+     * dřív, než soubor pod touto cestou uvidí upload.
+     */
+    public void add(Path file, long size) {
+        Long previous = charged.put(key(file), size);
+        used.addAndGet(size - (previous != null ? previous : 0));
+    }
+
+    /**
+     * Smaže nahraný soubor a uvolní jeho místo čekajícímu stahování.
+     */
+    public void release(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        discharge(file);
+    }
+
+    /**
+     * Soubor zůstává na disku, ale přestane se počítat - upload ho v tomto běhu neuvolní
+     * (přeskočil ho, nahrání selhalo nebo se ho nepovedlo přesunout na místo).
+     */
+    public void discharge(Path file) {
+        Long size = charged.remove(key(file));
+        if (size == null) {
+            return; // nezapočítaný nebo už uvolněný
+        }
+        used.addAndGet(-size);
+        lastRelease = System.nanoTime();
+        lock.lock();
+        try {
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Upload skončil - čekající i další awaitRoom skončí výjimkou místo věčného čekání.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (abandoned == null) {
+                abandoned = "upload skončil";
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkAbandoned() {
+        String reason = abandoned;
+        if (reason != null) {
+            throw new IllegalStateException("Staging plný a " + reason + " (" + this + ")");
+        }
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String toString() {
+        return "Staging: " + used.get() / (1024 * 1024) + " / " + highWater / (1024 * 1024) + " MB";
+    }
+}
@@ -0,0 +1,116 @@
+package cz.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Společný pool souběžných úloh pro víc účtů. Každý účet má vlastní frontu (Lane),
+ * volné sloty se přidělují round-robin mezi neprázdné fronty, takže účet s velkým
+ * albem nezablokuje ostatní a všechny dohromady nepřekročí globální počet slotů.
+ * Stejně se dělí i malé a velké soubory jednoho přenosu (SizeLanes).
+ */
+public class FairScheduler implements AutoCloseable {
+
+    private final int slots;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("slot-", 0).factory());
+    private int running;
+    private int cursor;
+
+    public FairScheduler(int slots) {
+        this.slots = slots;
+    }
+
+    public int slots() {
+        return slots;
+    }
+
+    /**
+     * Fronta jednoho účtu.
+     *
+     * @param maxRunning kolik slotů může účet držet najednou
+     */
+    public synchronized Lane lane(String name, int maxRunning) {
+        Lane lane = new Lane(name, maxRunning);
+        lanes.add(lane);
+        Metrics.gauge("f2g_queue_depth{queue=\"" + name + "\"}", lane::queued);
+        return lane;
+    }
+
+    public class Lane implements Executor {
+        private final String name;
+        private final int maxRunning;
+        private final Queue<Runnable> queue = new ArrayDeque<>();
+        private int running;
+
+        private Lane(String name, int maxRunning) {
+            this.name = name;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (FairScheduler.this) {
+                queue.add(task);
+                dispatch();
+            }
+        }
+
+        public int queued() {
+            synchronized (FairScheduler.this) {
+                return queue.size();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Rozdá volné sloty; volá se pod zámkem po každé změně front nebo doběhnutí úlohy.
+     */
+    private void dispatch() {
+        while (running < slots) {
+            Lane next = null;
+            for (int i = 0; i < lanes.size() && next == null; i++) {
+                Lane lane = lanes.get((cursor + i) % lanes.size());
+                if (!lane.queue.isEmpty() && lane.running < lane.maxRunning) {
+                    next = lane;
+                    cursor = (cursor + i + 1) % lanes.size();
+                }
+            }
+            if (next == null) {
+                return;
+            }
+
+            Lane lane = next;
+            Runnable task = lane.queue.poll();
+            running++;
+            lane.running++;
+            threads.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    synchronized (FairScheduler.this) {
+                        running--;
+                        lane.running--;
+                        dispatch();
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        threads.shutdown();
+    }
+}
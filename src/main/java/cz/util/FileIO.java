@@ -0,0 +1,139 @@
+package cz.util;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lokální I/O přes FileChannel a direct buffery, bez kopírování přes byte[] na heapu.
+ * <p>
+ * Velikost bufferu se nastavuje přes -Df2g.ioBuffer (výchozí 256 kB), buffery se
+ * recyklují (max. -Df2g.ioBuffers, výchozí 64), protože alokace direct paměti je drahá.
+ * Kde je na obou stranách kanál, kopíruje jádro přes transferTo bez bufferu v Javě.
+ */
+public class FileIO {
+
+    private static final int BUFFER_SIZE = Integer.getInteger("f2g.ioBuffer", 256 * 1024);
+    private static final int MAX_POOLED = Integer.getInteger("f2g.ioBuffers", 64);
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    /**
+     * Přečte celý zdroj do souboru od jeho aktuální pozice, volitelně s průběžným hashem.
+     * Ze souboru bez hashe kopíruje přes transferTo.
+     *
+     * @return počet zapsaných bajtů
+     */
+    public static long copy(ReadableByteChannel in, FileChannel out, MessageDigest digest) throws IOException {
+        if (digest == null && in instanceof FileChannel file) {
+            long total = 0;
+            for (long position = file.position(), size = file.size(); position < size; ) {
+                long sent = file.transferTo(position, size - position, out);
+                if (sent == 0) {
+                    break; // soubor se mezitím zkrátil
+                }
+                position += sent;
+                total += sent;
+            }
+            file.position(file.position() + total);
+            return total;
+        }
+        ByteBuffer buffer = acquire();
+        try {
+            long total = 0;
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                if (digest != null) {
+                    digest.update(buffer.duplicate());
+                }
+                while (buffer.hasRemaining()) {
+                    total += out.write(buffer);
+                }
+                buffer.clear();
+            }
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Předá celý obsah souboru do digestu.
+     */
+    public static void digest(Path file, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = acquire();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Tělo požadavku čtené přímo ze souboru přes transferTo do socketu OkHttp, bez mmap
+     * oken, která by do GC zůstala namapovaná; OkHttp ho může při opakování poslat znovu,
+     * protože se soubor při každém zápisu otevírá nově. S limitem rychlosti (null = bez limitu)
+     * jde soubor po blocích velikosti bufferu a permity se berou za každý odeslaný blok.
+     */
+    public static RequestBody fileBody(Path file, MediaType contentType, long length, Bandwidth bandwidth) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                    for (long position = 0; position < length; ) {
+                        long count = bandwidth != null ? Math.min(BUFFER_SIZE, length - position) : length - position;
+                        long sent = in.transferTo(position, count, sink);
+                        if (sent == 0 && position >= in.size()) {
+                            throw new IOException("Soubor " + file + " se během uploadu zkrátil");
+                        }
+                        Bandwidth.acquire(bandwidth, sent);
+                        position += sent;
+                    }
+                }
+            }
+        };
+    }
+
+    private static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        POOLED.decrementAndGet();
+        return buffer;
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            buffer.clear();
+            POOL.offer(buffer);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cz.util;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sdílený HTTP klient pro přenosy dat - jeden pool spojení s keep-alive a HTTP/2,
+ * takže se TLS handshake neplatí pro každý soubor znovu.
+ * <p>
+ * Počet souběžných požadavků na jeden host se nastavuje přes -Df2g.maxPerHost
+ * (výchozí 8) a platí i pro synchronní volání; slot se uvolní až zavřením těla odpovědi.
+ */
+public class Http {
+
+    private static final int MAX_PER_HOST = Integer.getInteger("f2g.maxPerHost", 8);
+    private static final int MAX_IDLE_CONNECTIONS = 32;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static final Map<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
+
+    private static volatile OkHttpClient client;
+
+    public static OkHttpClient client() {
+        if (client == null) {
+            synchronized (Http.class) {
+                if (client == null) {
+                    client = build();
+                }
+            }
+        }
+        return client;
+    }
+
+    private static OkHttpClient build() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(MAX_PER_HOST);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(Duration.ofSeconds(10))
+                .readTimeout(Duration.ofSeconds(30))
+                .writeTimeout(Duration.ofSeconds(60))
+                .addInterceptor(Http::limitPerHost);
+
+        // Utils.ignoreCert() sem záměrně nesahá - klient posílá Google OAuth token
+        return builder.build();
+    }
+
+    /**
+     * Drží slot hosta od odeslání požadavku do zavření těla odpovědi.
+     */
+    private static Response limitPerHost(Interceptor.Chain chain) throws IOException {
+        Semaphore permits = HOST_PERMITS.computeIfAbsent(chain.request().url().host(),
+                h -> new Semaphore(MAX_PER_HOST));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Přerušeno při čekání na spojení", e);
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        ResponseBody body = response.body();
+        AtomicBoolean released = new AtomicBoolean();
+        ForwardingSource releasing = new ForwardingSource(body.source()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(releasing), body.contentType(), body.contentLength()))
+                .build();
+    }
+}
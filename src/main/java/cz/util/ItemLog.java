@@ -0,0 +1,63 @@
+package cz.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Řádky o jednotlivých fotkách (staženo, přeskočeno, nahráno...). Vypisuje je
+ * samostatné vlákno, takže workery na konzoli nečekají; při zahlcení se řádky
+ * zahazují a jen se spočítají. -Df2g.itemLog=false výpis vypne úplně.
+ * Chyby a varování dál jdou rovnou na System.err.
+ */
+public class ItemLog {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("f2g.itemLog", "true"));
+    private static final int CAPACITY = 10_000;
+
+    private static final BlockingQueue<String> QUEUE = new ArrayBlockingQueue<>(CAPACITY);
+    private static final LongAdder DROPPED = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            Thread.ofPlatform().daemon().name("item-log").start(ItemLog::run);
+        }
+    }
+
+    public static void info(String line) {
+        if (ENABLED && !QUEUE.offer(line)) {
+            DROPPED.increment();
+        }
+    }
+
+    private static void run() {
+        List<String> lines = new ArrayList<>();
+        try {
+            while (true) {
+                lines.add(QUEUE.take());
+                QUEUE.drainTo(lines);
+                StringBuilder out = new StringBuilder();
+                lines.forEach(line -> out.append(line).append('\n'));
+                System.out.print(out);
+                lines.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Vypíše, co zbylo ve frontě (volá se na konci běhu).
+     */
+    public static void flush() {
+        List<String> lines = new ArrayList<>();
+        QUEUE.drainTo(lines);
+        lines.forEach(System.out::println);
+        long dropped = DROPPED.sumThenReset();
+        if (dropped > 0) {
+            System.out.println("(vynecháno " + dropped + " řádků výpisu)");
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package cz.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leasy na jednotky práce pro víc procesů nad sdíleným adresářem (i síťovým), bez databáze.
+ * <p>
+ * Lease je soubor jednotka.lease se jménem uzlu. Vzniká hard linkem z dočasného souboru -
+ * link(2) je atomický i na NFS, takže lease získá právě jeden uzel. Držitel obnovuje mtime
+ * každou třetinu ttl; lease, jehož mtime je starší než ttl, patří mrtvému uzlu a převezme ho
+ * ten, komu se ho podaří atomicky přejmenovat. Hotová jednotka má soubor jednotka.done.
+ * Uzly proto potřebují hodiny srovnané s přesností výrazně lepší než ttl.
+ * <p>
+ * Když heartbeat zjistí, že lease převzal jiný uzel (obnovení se nestihlo do ttl), jednotka
+ * přestane být držená: isHeld vrátí false a complete ji odmítne. Práci na ní má držitel
+ * ukončit a nechat ji novému vlastníkovi.
+ */
+public class LeaseStore implements AutoCloseable {
+
+    private final Path dir;
+    private final String node;
+    private final long ttlMillis;
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r ->
+            Thread.ofPlatform().daemon().name("lease-heartbeat").unstarted(r));
+
+    public LeaseStore(Path dir, String node, long ttlMillis) throws IOException {
+        this.dir = dir;
+        this.node = node;
+        this.ttlMillis = ttlMillis;
+        Files.createDirectories(dir);
+        heartbeat.scheduleWithFixedDelay(this::renew, ttlMillis / 3, ttlMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return false pokud lease tento uzel nedrží nebo o něj mezitím přišel
+     */
+    public boolean isHeld(String unit) {
+        return held.contains(unit);
+    }
+
+    public boolean isDone(String unit) {
+        return Files.exists(dir.resolve(unit + ".done"));
+    }
+
+    /**
+     * Získá volný lease, případně převezme lease mrtvého uzlu.
+     *
+     * @return false pokud je jednotka hotová nebo ji drží živý uzel
+     */
+    public boolean tryClaim(String unit) throws IOException {
+        if (isDone(unit)) {
+            return false;
+        }
+        Path lease = dir.resolve(unit + ".lease");
+        if (Files.exists(lease) && !steal(unit, lease)) {
+            return false;
+        }
+
+        Path tmp = dir.resolve(unit + ".claim." + node);
+        Files.writeString(tmp, node, StandardCharsets.UTF_8);
+        try {
+            Files.createLink(lease, tmp);
+        } catch (FileAlreadyExistsException e) {
+            return false; // předběhl nás jiný uzel
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        held.add(unit);
+
+        // jednotku mohl mezitím dokončit předchozí držitel (done vzniká před smazáním lease)
+        if (isDone(unit)) {
+            release(unit);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Přejmenuje prošlý lease - uspěje jen jeden uzel. Pokud mezitím lease převzal a obnovil
+     * jiný uzel, vrátí ho zpět.
+     */
+    private boolean steal(String unit, Path lease) throws IOException {
+        if (!expired(lease)) {
+            return false;
+        }
+        Path stale = dir.resolve(unit + ".stale." + node);
+        try {
+            Files.move(lease, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return true; // lease mezitím zmizel, zkusíme ho rovnou získat
+        }
+        if (!expired(stale)) {
+            try {
+                Files.createLink(lease, stale);
+            } catch (FileAlreadyExistsException e) {
+                // lease už má zase někdo jiný
+            }
+            Files.deleteIfExists(stale);
+            return false;
+        }
+        System.out.println("♻️ Přebírám " + unit + " po uzlu " + owner(stale));
+        Files.deleteIfExists(stale);
+        return true;
+    }
+
+    /**
+     * Označí jednotku jako hotovou a uvolní lease.
+     *
+     * @throws IllegalStateException lease mezitím převzal jiný uzel, jednotka patří jemu
+     */
+    public void complete(String unit) throws IOException {
+        if (!held.contains(unit) || !node.equals(owner(dir.resolve(unit + ".lease")))) {
+            held.remove(unit);
+            throw new IllegalStateException("Lease " + unit + " už nedrží uzel " + node);
+        }
+        Path tmp = dir.resolve(unit + ".done." + node);
+        Files.writeString(tmp, node, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(unit + ".done"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        release(unit);
+    }
+
+    /**
+     * Uvolní lease bez dokončení - jednotku může vzít jiný uzel.
+     */
+    public void release(String unit) throws IOException {
+        if (held.remove(unit) && node.equals(owner(dir.resolve(unit + ".lease")))) {
+            Files.deleteIfExists(dir.resolve(unit + ".lease"));
+        }
+    }
+
+    private void renew() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (String unit : held) {
+            Path lease = dir.resolve(unit + ".lease");
+            try {
+                if (!node.equals(owner(lease))) {
+                    // isHeld od teď vrací false, držitel práci na jednotce ukončí
+                    System.err.println("⚠️ Lease " + unit + " převzal jiný uzel (" + owner(lease) + "), práci na něm končím");
+                    held.remove(unit);
+                    continue;
+                }
+                Files.setLastModifiedTime(lease, now);
+            } catch (IOException e) {
+                System.err.println("⚠️ Nelze obnovit lease " + unit + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean expired(Path lease) throws IOException {
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(lease).toMillis() > ttlMillis;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static String owner(Path lease) throws IOException {
+        try {
+            return Files.readString(lease, StandardCharsets.UTF_8).strip();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Zastaví obnovování; nedokončené leasy uvolní, aby je ostatní nemuseli nechat vypršet.
+     */
+    @Override
+    public void close() throws IOException {
+        heartbeat.shutdownNow();
+        for (String unit : Set.copyOf(held)) {
+            release(unit);
+        }
+    }
+}
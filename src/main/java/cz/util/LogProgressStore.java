@@ -0,0 +1,277 @@
+package cz.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log s jedním klíčem na řádek (stejný formát jako dřívější *.txt soubory).
+ * <p>
+ * V paměti drží jen 64bitové otisky klíčů, zápisy se sbírají a na disk jdou po dávkách
+ * (group commit) každých FLUSH_INTERVAL_MS nebo po naplnění bufferu. Neúplný poslední
+ * řádek po pádu se při otevření zahodí, duplicity se při otevření kompaktují.
+ */
+class LogProgressStore implements ProgressStore {
+
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final int MAX_PENDING_BYTES = 64 * 1024;
+    private static final double COMPACT_RATIO = 1.5; // kompaktujeme, když je třetina řádků duplicitní
+
+    private final Path path;
+    private final FileChannel channel;
+    private final LongHashSet keys = new LongHashSet();
+    private final ScheduledExecutorService flusher;
+    private ByteBuffer pending = ByteBuffer.allocate(MAX_PENDING_BYTES);
+    private boolean unsynced; // zapsáno, ale force selhal - další flush ho zopakuje
+    private boolean closed;
+
+    /**
+     * Otevírá log pro zápis až po recover(), kompaktace soubor nahrazuje.
+     */
+    interface Opener {
+        FileChannel open(Path path) throws IOException;
+    }
+
+    LogProgressStore(Path path) throws IOException {
+        this(path, p -> FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    LogProgressStore(Path path, Opener opener) throws IOException {
+        this.path = path;
+        recover();
+        this.channel = opener.open(path);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r ->
+                Thread.ofPlatform().daemon().name("progress-" + path.getFileName()).unstarted(r));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Načte otisky klíčů, ořízne neúplný poslední záznam a případně log zkompaktuje.
+     */
+    private void recover() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        // záznam je platný jen pokud končí '\n' - vše za posledním koncem řádku je torzo
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long validLength = lastNewline(ch) + 1;
+            if (validLength < ch.size()) {
+                System.err.println("Zahazuji neúplný záznam na konci " + path);
+                ch.truncate(validLength);
+            }
+        }
+
+        long records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    keys.add(fingerprint(line));
+                    records++;
+                }
+            }
+        }
+
+        if (records > keys.size() * COMPACT_RATIO) {
+            compact();
+        }
+    }
+
+    static long lastNewline(FileChannel ch) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        long end = ch.size();
+        while (end > 0) {
+            long start = Math.max(0, end - buf.capacity());
+            buf.clear().limit((int) (end - start));
+            ch.read(buf, start);
+            for (int i = buf.position() - 1; i >= 0; i--) {
+                if (buf.get(i) == '\n') {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    /**
+     * Přepíše log jen s unikátními klíči (atomicky přes dočasný soubor).
+     */
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        LongHashSet written = new LongHashSet();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && written.add(fingerprint(line))) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Zkompaktován " + path + " (" + written.size() + " záznamů)");
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return keys.contains(fingerprint(key));
+    }
+
+    @Override
+    public void add(String key) {
+        byte[] record = (key + "\n").getBytes(StandardCharsets.UTF_8);
+        boolean full;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Zápis do zavřeného " + path + ": " + key);
+            }
+            if (!keys.add(fingerprint(key))) {
+                return; // už zapsáno
+            }
+            if (pending.remaining() < record.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            pending.put(record);
+            full = pending.position() >= MAX_PENDING_BYTES;
+        }
+        if (full) {
+            flushQuietly();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pending.position() == 0 && !unsynced) {
+            return;
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+        } finally {
+            // po chybě zápisu zůstane v bufferu přesně nezapsaný zbytek a navážou na něj další záznamy
+            pending.compact();
+        }
+        unsynced = true;
+        channel.force(false);
+        unsynced = false;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Chyba při zápisu do souboru " + path + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true; // záznam přidaný po zavření by se tiše ztratil
+        }
+        flusher.shutdown();
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 64bitový otisk klíče (FNV-1a přes znaky + finalizace z MurmurHash3).
+     * Při milionu klíčů je pravděpodobnost kolize řádově 1e-8.
+     */
+    static long fingerprint(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Otevřená adresace nad long[], 0 slouží jako prázdná pozice.
+     */
+    static final class LongHashSet {
+        private long[] table = new long[1024];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(long value) {
+            long v = value == 0 ? 1 : value;
+            int mask = table.length - 1;
+            for (int i = (int) v & mask; ; i = (i + 1) & mask) {
+                if (table[i] == 0) {
+                    return false;
+                }
+                if (table[i] == v) {
+                    return true;
+                }
+            }
+        }
+
+        boolean add(long value) {
+            long v = value == 0 ? 1 : value;
+            if ((size + 1) * 2 > table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            for (int i = (int) v & mask; ; i = (i + 1) & mask) {
+                if (table[i] == 0) {
+                    table[i] = v;
+                    size++;
+                    return true;
+                }
+                if (table[i] == v) {
+                    return false;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long v : old) {
+                if (v != 0) {
+                    int i = (int) v & mask;
+                    while (table[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = v;
+                }
+            }
+        }
+    }
+}
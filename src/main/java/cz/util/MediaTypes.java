@@ -0,0 +1,129 @@
+package cz.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MIME typy fotek a videí, které Google Photos přijme. Nejdřív podle přípony z tabulky,
+ * u neznámé přípony podle prvních bajtů souboru (bez Files.probeContentType, který
+ * podle platformy čte celé soubory nebo volá externí nástroje).
+ */
+public class MediaTypes {
+
+    private static final Map<String, String> BY_EXTENSION = Map.ofEntries(
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("jpe", "image/jpeg"),
+            Map.entry("png", "image/png"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("bmp", "image/bmp"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("heic", "image/heic"),
+            Map.entry("heif", "image/heif"),
+            Map.entry("tif", "image/tiff"),
+            Map.entry("tiff", "image/tiff"),
+            Map.entry("ico", "image/x-icon"),
+            Map.entry("mov", "video/quicktime"),
+            Map.entry("qt", "video/quicktime"),
+            Map.entry("mp4", "video/mp4"),
+            Map.entry("m4v", "video/x-m4v"),
+            Map.entry("avi", "video/x-msvideo"),
+            Map.entry("mpg", "video/mpeg"),
+            Map.entry("mpeg", "video/mpeg"),
+            Map.entry("mkv", "video/x-matroska"),
+            Map.entry("wmv", "video/x-ms-wmv"),
+            Map.entry("asf", "video/x-ms-asf"),
+            Map.entry("3gp", "video/3gpp"),
+            Map.entry("3g2", "video/3gpp2"),
+            Map.entry("mts", "video/mp2t"),
+            Map.entry("m2ts", "video/mp2t"),
+            Map.entry("m2t", "video/mp2t"));
+
+    private static final int SNIFF_LENGTH = 16;
+
+    /**
+     * @return MIME typ podle přípony, null pokud přípona není v tabulce
+     */
+    public static String byExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? null : BY_EXTENSION.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Rozpozná typ podle prvních bajtů souboru.
+     *
+     * @return MIME typ, nebo null pokud soubor není fotka ani video
+     */
+    public static String sniff(Path file) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(SNIFF_LENGTH);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (head.hasRemaining()) {
+                if (in.read(head) == -1) {
+                    break;
+                }
+            }
+        }
+        byte[] b = head.array();
+        int n = head.position();
+
+        if (n >= 3 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xD8 && (b[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (n >= 8 && (b[0] & 0xFF) == 0x89 && ascii(b, 1, "PNG")) {
+            return "image/png";
+        }
+        if (n >= 6 && ascii(b, 0, "GIF8")) {
+            return "image/gif";
+        }
+        if (n >= 4 && (ascii(b, 0, "II") && b[2] == 42 && b[3] == 0 || ascii(b, 0, "MM") && b[2] == 0 && b[3] == 42)) {
+            return "image/tiff";
+        }
+        if (n >= 12 && ascii(b, 0, "RIFF")) {
+            if (ascii(b, 8, "WEBP")) {
+                return "image/webp";
+            }
+            if (ascii(b, 8, "AVI ")) {
+                return "video/x-msvideo";
+            }
+        }
+        if (n >= 12 && ascii(b, 4, "ftyp")) {
+            String brand = new String(b, 8, 4, StandardCharsets.US_ASCII);
+            return switch (brand) {
+                case "heic", "heix", "hevc", "hevx" -> "image/heic";
+                case "mif1", "msf1" -> "image/heif";
+                case "qt  " -> "video/quicktime";
+                case "3gp4", "3gp5", "3gp6" -> "video/3gpp";
+                case "3g2a" -> "video/3gpp2";
+                default -> "video/mp4";
+            };
+        }
+        if (n >= 4 && (b[0] & 0xFF) == 0x1A && (b[1] & 0xFF) == 0x45 && (b[2] & 0xFF) == 0xDF && (b[3] & 0xFF) == 0xA3) {
+            return "video/x-matroska";
+        }
+        if (n >= 4 && (b[0] & 0xFF) == 0x30 && (b[1] & 0xFF) == 0x26 && (b[2] & 0xFF) == 0xB2 && (b[3] & 0xFF) == 0x75) {
+            return "video/x-ms-asf";
+        }
+        if (n >= 4 && b[0] == 0 && b[1] == 0 && b[2] == 1 && (b[3] & 0xFF) == 0xBA) {
+            return "video/mpeg";
+        }
+        if (n >= 2 && ascii(b, 0, "BM")) {
+            return "image/bmp";
+        }
+        return null;
+    }
+
+    private static boolean ascii(byte[] bytes, int offset, String expected) {
+        for (int i = 0; i < expected.length(); i++) {
+            if (bytes[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,290 @@
+package cz.util;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metriky dlouhých migrací: čítače po fázích (download/upload/transfer), histogramy
+ * latence API, throttling limiterů a délky front.
+ * <p>
+ * Každých -Df2g.metricsInterval sekund (výchozí 30) se vypíše jeden souhrnný řádek
+ * s propustností a ETA, s -Df2g.metricsPort=N jsou metriky v Prometheus formátu
+ * na http://localhost:N/metrics.
+ */
+public class Metrics {
+
+    private static final long INTERVAL_SECONDS = Long.getLong("f2g.metricsInterval", 30);
+    private static final Integer PORT = Integer.getInteger("f2g.metricsPort");
+
+    private static final Map<String, Stage> STAGES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, DoubleSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    private static ScheduledExecutorService reporter;
+    private static HttpServer server;
+    private static long startNanos;
+
+    /**
+     * Čítače jedné fáze přenosu.
+     */
+    public static final class Stage {
+        private final String name;
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder done = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder discovered = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private long lastBytes;
+        private long lastDone;
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        public void bytes(long count) {
+            bytes.add(count);
+        }
+
+        /** Položka je hotová (stažená, nahraná, nalinkovaná...). */
+        public void done() {
+            done.increment();
+        }
+
+        public void failed() {
+            failed.increment();
+        }
+
+        /** Položka čeká na zpracování - základ pro ETA. */
+        public void discovered() {
+            discovered.increment();
+        }
+
+        public void retry() {
+            retries.increment();
+        }
+
+        private synchronized String summary(double seconds) {
+            long b = bytes.sum();
+            long d = done.sum();
+            double bytesPerSecond = (b - lastBytes) / seconds;
+            double itemsPerSecond = (d - lastDone) / seconds;
+            lastBytes = b;
+            lastDone = d;
+
+            long remaining = discovered.sum() - d - failed.sum();
+            String eta = itemsPerSecond > 0 && remaining > 0
+                    ? formatDuration(Duration.ofSeconds((long) (remaining / itemsPerSecond)))
+                    : "-";
+            return String.format("%s %.1f MB/s %.1f pol./s, hotovo %d/%d, chyb %d, opakování %d, ETA %s",
+                    name, bytesPerSecond / (1024 * 1024), itemsPerSecond, d, discovered.sum(),
+                    failed.sum(), retries.sum(), eta);
+        }
+    }
+
+    /**
+     * Histogram latence v milisekundách s pevnými hranicemi košů.
+     */
+    public static final class Histogram {
+        private static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000};
+
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long millis) {
+            int i = 0;
+            while (i < BOUNDS.length && millis > BOUNDS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            sum.add(millis);
+        }
+
+        /** Zaznamená dobu od startNanos (System.nanoTime). */
+        public void since(long startNanos) {
+            record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+
+        /** Horní hranice koše, pod kterou je daný podíl měření (∞ = Long.MAX_VALUE). */
+        private long percentile(double quantile) {
+            long total = count.sum();
+            long target = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= target) {
+                    return BOUNDS[i];
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public static Stage stage(String name) {
+        return STAGES.computeIfAbsent(name, Stage::new);
+    }
+
+    /**
+     * Histogram latence volání API, např. latency("flickr").
+     */
+    public static Histogram latency(String api) {
+        return HISTOGRAMS.computeIfAbsent(api, a -> new Histogram());
+    }
+
+    /**
+     * Obecný čítač, name je celý název série včetně labelů, např. f2g_throttled_total{limiter="Flickr API",instance="0"}.
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Hodnota čtená až při výpisu (délka fronty, aktuální rychlost limiteru...).
+     */
+    public static void gauge(String name, DoubleSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * Spustí periodický souhrn a případně HTTP endpoint.
+     */
+    public static synchronized void start() throws IOException {
+        if (reporter != null) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        reporter = Executors.newSingleThreadScheduledExecutor(r ->
+                Thread.ofPlatform().daemon().name("metrics").unstarted(r));
+        reporter.scheduleAtFixedRate(() -> System.out.println(summary(INTERVAL_SECONDS)),
+                INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        if (PORT != null) {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            System.out.println("📈 Metriky na http://localhost:" + PORT + "/metrics");
+        }
+    }
+
+    /**
+     * Zastaví reportování a vypíše závěrečný souhrn za celý běh.
+     */
+    public static synchronized void stop() {
+        if (reporter == null) {
+            return;
+        }
+        reporter.shutdownNow();
+        reporter = null;
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        // průměr za celý běh - rozdíly od posledního intervalu nás už nezajímají
+        STAGES.values().forEach(stage -> {
+            synchronized (stage) {
+                stage.lastBytes = 0;
+                stage.lastDone = 0;
+            }
+        });
+        System.out.println(summary(seconds) + " (celkem za " + formatDuration(Duration.ofSeconds((long) seconds)) + ")");
+    }
+
+    /**
+     * Jeden řádek se stavem všech fází, latencemi a frontami.
+     */
+    static String summary(double seconds) {
+        StringBuilder line = new StringBuilder("📈");
+        STAGES.values().forEach(stage -> line.append(' ').append(stage.summary(seconds)).append(" |"));
+        HISTOGRAMS.forEach((api, h) -> {
+            long count = h.count.sum();
+            if (count > 0) {
+                long p95 = h.percentile(0.95);
+                line.append(' ').append(api).append(" API ").append(h.sum.sum() / count).append(" ms průměr, p95 ")
+                        .append(p95 == Long.MAX_VALUE ? "> 30 s" : "≤ " + p95 + " ms").append(" |");
+            }
+        });
+        COUNTERS.forEach((name, value) -> {
+            if (value.sum() > 0) {
+                line.append(' ').append(name).append('=').append(value.sum());
+            }
+        });
+        GAUGES.forEach((name, value) -> line.append(' ').append(name).append('=')
+                .append(String.format("%.1f", value.getAsDouble())));
+        return line.toString();
+    }
+
+    /**
+     * Všechny metriky v textovém formátu Prometheus.
+     */
+    static String prometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# TYPE f2g_bytes_total counter\n");
+        STAGES.forEach((name, s) -> series(out, "f2g_bytes_total", "stage", name, s.bytes.sum()));
+        out.append("# TYPE f2g_items_total counter\n");
+        STAGES.forEach((name, s) -> series(out, "f2g_items_total", "stage", name, s.done.sum()));
+        out.append("# TYPE f2g_items_failed_total counter\n");
+        STAGES.forEach((name, s) -> series(out, "f2g_items_failed_total", "stage", name, s.failed.sum()));
+        out.append("# TYPE f2g_items_discovered_total counter\n");
+        STAGES.forEach((name, s) -> series(out, "f2g_items_discovered_total", "stage", name, s.discovered.sum()));
+        out.append("# TYPE f2g_retries_total counter\n");
+        STAGES.forEach((name, s) -> series(out, "f2g_retries_total", "stage", name, s.retries.sum()));
+
+        out.append("# TYPE f2g_api_latency_ms histogram\n");
+        HISTOGRAMS.forEach((api, h) -> {
+            long cumulative = 0;
+            for (int i = 0; i < h.buckets.length; i++) {
+                cumulative += h.buckets[i].sum();
+                String le = i < Histogram.BOUNDS.length ? Long.toString(Histogram.BOUNDS[i]) : "+Inf";
+                out.append("f2g_api_latency_ms_bucket{api=\"").append(api).append("\",le=\"").append(le)
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            series(out, "f2g_api_latency_ms_sum", "api", api, h.sum.sum());
+            series(out, "f2g_api_latency_ms_count", "api", api, h.count.sum());
+        });
+
+        COUNTERS.forEach((name, value) -> out.append(name).append(' ').append(value.sum()).append('\n'));
+        GAUGES.forEach((name, value) -> out.append(name).append(' ').append(value.getAsDouble()).append('\n'));
+        return out.toString();
+    }
+
+    private static void series(StringBuilder out, String metric, String label, String value, long number) {
+        out.append(metric).append('{').append(label).append("=\"").append(value).append("\"} ")
+                .append(number).append('\n');
+    }
+
+    private static String formatDuration(Duration duration) {
+        long hours = duration.toHours();
+        return hours > 0
+                ? String.format("%dh%02dm", hours, duration.toMinutesPart())
+                : String.format("%dm%02ds", duration.toMinutesPart(), duration.toSecondsPart());
+    }
+}
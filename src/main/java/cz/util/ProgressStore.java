@@ -0,0 +1,30 @@
+package cz.util;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Úložiště průběhu (stažené fotky, nahrané soubory, hotová alba).
+ * Klíče se jen přidávají, nikdy neodebírají. Implementace musí být thread-safe.
+ */
+public interface ProgressStore extends AutoCloseable {
+
+    boolean contains(String key);
+
+    void add(String key);
+
+    /**
+     * Zapíše čekající záznamy na disk.
+     */
+    void flush() throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Otevře výchozí implementaci nad souborem s jedním klíčem na řádek.
+     */
+    static ProgressStore open(String filePath) throws IOException {
+        return new LogProgressStore(Paths.get(filePath));
+    }
+}
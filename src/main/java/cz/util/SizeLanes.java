@@ -0,0 +1,60 @@
+package cz.util;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Dva pruhy přenosů podle velikosti - malé fotky a velká média - aby jedno několikagigové
+ * video nezdrželo tisíce malých JPEGů ve frontě za sebou. Sloty se mezi pruhy střídají
+ * round-robin (FairScheduler), velká média smí držet nanejvýš -Df2g.largeSlots slotů
+ * (výchozí čtvrtina, aspoň jeden), malým fotkám vždy zbývá zbytek.
+ */
+public class SizeLanes implements AutoCloseable {
+
+    /**
+     * Hranice velkého souboru podle velikosti na disku (-Df2g.largeFileMB, výchozí 64).
+     */
+    public static final long LARGE_BYTES = Long.getLong("f2g.largeFileMB", 64) * 1024 * 1024;
+
+    private final FairScheduler scheduler;
+    private final FairScheduler.Lane small;
+    private final FairScheduler.Lane large;
+    private final int largeSlots;
+
+    /**
+     * @param name    prefix názvu front v metrikách (name-small, name-large)
+     * @param workers souběžné přenosy obou pruhů dohromady
+     */
+    public SizeLanes(String name, int workers) {
+        int configured = Integer.getInteger("f2g.largeSlots", Math.max(1, workers / 4));
+        this.largeSlots = workers > 1 ? Math.max(1, Math.min(workers - 1, configured)) : 1;
+        this.scheduler = new FairScheduler(workers);
+        this.small = scheduler.lane(name + "-small", workers);
+        this.large = scheduler.lane(name + "-large", largeSlots);
+    }
+
+    /**
+     * Volitelný limit rychlosti pruhu v MB/s (-Df2g.smallLaneMBps, -Df2g.largeLaneMBps), velká
+     * média tak nevytlačí malé fotky z linky; null = bez limitu. Každé volání vrátí nový
+     * limit, stahování a upload si ho berou každé zvlášť.
+     */
+    public static Bandwidth bandwidth(boolean largeMedia) {
+        String mbps = System.getProperty(largeMedia ? "f2g.largeLaneMBps" : "f2g.smallLaneMBps");
+        return mbps != null ? new Bandwidth((long) (Double.parseDouble(mbps) * 1024 * 1024)) : null;
+    }
+
+    public Executor lane(boolean largeMedia) {
+        return largeMedia ? large : small;
+    }
+
+    /**
+     * Kolik přenosů pruhu běží najednou.
+     */
+    public int slots(boolean largeMedia) {
+        return largeMedia ? largeSlots : scheduler.slots();
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+    }
+}
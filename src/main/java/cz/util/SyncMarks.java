@@ -0,0 +1,85 @@
+package cz.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * High-water marky pro inkrementální synchronizaci: klíč (id alba, adresář) -> poslední
+ * zpracovaná verze (date_update z Flickru, mtime adresáře). Nezměněné album se při
+ * dalším běhu přeskočí bez jediného volání API.
+ */
+public class SyncMarks {
+
+    private final Path file;
+    private final Properties marks = new Properties();
+
+    private SyncMarks(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                marks.load(in);
+            }
+        }
+    }
+
+    public static SyncMarks open(String filePath) throws IOException {
+        return new SyncMarks(Paths.get(filePath));
+    }
+
+    /**
+     * @return true pokud se verze od posledního zpracování nezměnila
+     */
+    public synchronized boolean unchanged(String key, String version) {
+        return version != null && version.equals(marks.getProperty(key));
+    }
+
+    public synchronized boolean contains(String key) {
+        return marks.containsKey(key);
+    }
+
+    public synchronized String get(String key) {
+        return marks.getProperty(key);
+    }
+
+    /**
+     * Zapíše verzi jako zpracovanou (hned na disk, atomicky přes dočasný soubor).
+     */
+    public synchronized void put(String key, String version) throws IOException {
+        if (version == null || version.equals(marks.getProperty(key))) {
+            return;
+        }
+        marks.setProperty(key, version);
+        save();
+    }
+
+    /**
+     * Zapíše víc verzí najednou jediným uložením souboru.
+     */
+    public synchronized void putAll(Map<String, String> versions) throws IOException {
+        boolean changed = false;
+        for (Map.Entry<String, String> entry : versions.entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().equals(marks.getProperty(entry.getKey()))) {
+                marks.setProperty(entry.getKey(), entry.getValue());
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            marks.store(out, "Inkrementální synchronizace - poslední zpracované verze");
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -4,27 +4,24 @@ import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.KeyManagementException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.TreeSet;
+import java.util.HexFormat;
 
 public class Utils {
 
     public static void ignoreCert() throws NoSuchAlgorithmException, KeyManagementException {
 
-        // 1. (Test) Vypnutí validace SSL certifikátů
+        // 1. (Test) Vypnutí validace SSL certifikátů - jen pro HttpsURLConnection (Flickr API),
+        // sdílený OkHttp klient (CDN, uploady s Google tokenem) certifikáty ověřuje vždy
         TrustManager[] trustAll = new TrustManager[] {
                 new X509TrustManager() {
-                    public java.security.cert.X509Certificate[] getAcceptedIssuers() { return null; }
+                    public java.security.cert.X509Certificate[] getAcceptedIssuers() { return new java.security.cert.X509Certificate[0]; }
                     public void checkClientTrusted(java.security.cert.X509Certificate[] xcs, String s) {}
                     public void checkServerTrusted(java.security.cert.X509Certificate[] xcs, String s) {}
                 }
@@ -35,27 +32,27 @@ public class Utils {
     }
 
 
-    public static void writeLine(String filePath, String line) {
-        Path path = Paths.get(filePath);
-        // true znamená append – přidá na konec souboru
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path.toFile(), true))) {
-            writer.write(line);
-            writer.newLine();
-        } catch (IOException e) {
-            System.err.println("Chyba při zápisu do souboru: " + e.getMessage());
-        }
+    /**
+     * Nahradí znaky, které nejsou písmena, číslice, _ - nebo tečka, podtržítkem.
+     */
+    public static String sanitizeName(String name) {
+        return name.replaceAll("[^\\p{L}\\d_\\-\\.]", "_");
+    }
+
+    /**
+     * SHA-256 obsahu souboru jako hex řetězec.
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = sha256Digest();
+        FileIO.digest(file, digest);
+        return HexFormat.of().formatHex(digest.digest());
     }
 
-    public static TreeSet<String> readLines(String filePath) {
-        TreeSet<String> lines = new TreeSet<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lines.add(line);
-            }
-        } catch (IOException e) {
-            System.err.println("Chyba při čtení ze souboru: " + e.getMessage());
+    public static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 je v každé JVM
         }
-        return lines;
     }
 }
@@ -0,0 +1,109 @@
+package cz.transfer;
+
+import cz.transfer.Reconcile.Diff;
+import cz.transfer.Reconcile.FlickrItem;
+import cz.transfer.Reconcile.Item;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReconcileTest {
+
+    private static Map<String, String> album(String... idNamePairs) {
+        Map<String, String> items = new LinkedHashMap<>();
+        for (int i = 0; i < idNamePairs.length; i += 2) {
+            items.put(idNamePairs[i], idNamePairs[i + 1]);
+        }
+        return items;
+    }
+
+    @Test
+    void matchesByMediaItemIdRegardlessOfName() {
+        Diff diff = Reconcile.diff("s", List.of(new FlickrItem("p1", "a.jpg", "m1")),
+                album("m1", "renamed.jpg"));
+
+        assertEquals(List.of(), diff.missing());
+        assertEquals(List.of(), diff.extra());
+    }
+
+    @Test
+    void sameMediaItemUnderTwoPhotosIsInAlbumOnce() {
+        Diff diff = Reconcile.diff("s", List.of(
+                        new FlickrItem("p1", "a.jpg", "m1"),
+                        new FlickrItem("p2", "a-copy.jpg", "m1")),
+                album("m1", "a.jpg"));
+
+        assertEquals(List.of(), diff.missing());
+        assertEquals(List.of(), diff.extra());
+    }
+
+    @Test
+    void fallsBackToFileName() {
+        Diff diff = Reconcile.diff("s", List.of(
+                        new FlickrItem("p1", "a.jpg", null),
+                        new FlickrItem("p2", "b.jpg", "gone")), // media item z indexu v albu už není
+                album("m1", "a.jpg", "m2", "b.jpg"));
+
+        assertEquals(List.of(), diff.missing());
+        assertEquals(List.of(), diff.extra());
+    }
+
+    @Test
+    void duplicateNamesPairOneToOne() {
+        List<FlickrItem> photos = List.of(
+                new FlickrItem("p1", "IMG.jpg", null),
+                new FlickrItem("p2", "IMG.jpg", null),
+                new FlickrItem("p3", "IMG.jpg", null));
+
+        Diff diff = Reconcile.diff("s", photos, album("m1", "IMG.jpg", "m2", "IMG.jpg"));
+
+        assertEquals(List.of(new Item("s/p3", "IMG.jpg")), diff.missing());
+        assertEquals(List.of(), diff.extra());
+    }
+
+    @Test
+    void idMatchDoesNotConsumeNameCandidate() {
+        // p1 se spáruje podle id, p2 se stejným názvem musí dostat druhou položku
+        Diff diff = Reconcile.diff("s", List.of(
+                        new FlickrItem("p1", "IMG.jpg", "m2"),
+                        new FlickrItem("p2", "IMG.jpg", null)),
+                album("m1", "IMG.jpg", "m2", "IMG.jpg"));
+
+        assertEquals(List.of(), diff.missing());
+        assertEquals(List.of(), diff.extra());
+    }
+
+    @Test
+    void onlyMissing() {
+        Diff diff = Reconcile.diff("s", List.of(
+                        new FlickrItem("p1", "a.jpg", null),
+                        new FlickrItem("p2", "b.jpg", "m2")),
+                Map.of());
+
+        assertEquals(List.of(new Item("s/p1", "a.jpg"), new Item("s/p2", "b.jpg")), diff.missing());
+        assertEquals(List.of(), diff.extra());
+    }
+
+    @Test
+    void onlyExtra() {
+        Diff diff = Reconcile.diff("s", List.of(), album("m1", "a.jpg", "m2", "b.jpg"));
+
+        assertEquals(List.of(), diff.missing());
+        assertEquals(List.of(new Item("s/m1", "a.jpg"), new Item("s/m2", "b.jpg")), diff.extra());
+    }
+
+    @Test
+    void missingAndExtraTogether() {
+        Diff diff = Reconcile.diff("s", List.of(
+                        new FlickrItem("p1", "a.jpg", "m1"),
+                        new FlickrItem("p2", "b.jpg", null)),
+                album("m1", "a.jpg", "m9", "c.jpg"));
+
+        assertEquals(List.of(new Item("s/p2", "b.jpg")), diff.missing());
+        assertEquals(List.of(new Item("s/m9", "c.jpg")), diff.extra());
+    }
+}
@@ -0,0 +1,19 @@
+package cz.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveRateLimiterTest {
+
+    @Test
+    void sameNameKeepsSeparateMetrics() {
+        AdaptiveRateLimiter.create("test-dup", 1.0, 0.5, 5.0);
+        AdaptiveRateLimiter.create("test-dup", 2.0, 0.5, 5.0);
+
+        String metrics = Metrics.prometheus();
+        assertTrue(metrics.contains("f2g_limiter_rate{limiter=\"test-dup\",instance=\"0\"} 1.0\n"), metrics);
+        assertTrue(metrics.contains("f2g_limiter_rate{limiter=\"test-dup\",instance=\"1\"} 2.0\n"), metrics);
+        assertTrue(metrics.contains("f2g_throttled_total{limiter=\"test-dup\",instance=\"1\"} 0\n"), metrics);
+    }
+}
@@ -0,0 +1,89 @@
+package cz.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaseStoreTest {
+
+    private static final long TTL = 60_000; // heartbeat během testu neproběhne
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void claimIsExclusive() throws IOException {
+        try (LeaseStore a = new LeaseStore(dir, "a", TTL);
+             LeaseStore b = new LeaseStore(dir, "b", TTL)) {
+            assertTrue(a.tryClaim("unit"));
+            assertFalse(b.tryClaim("unit"));
+            assertTrue(a.isHeld("unit"));
+            assertFalse(b.isHeld("unit"));
+            assertEquals("a", Files.readString(dir.resolve("unit.lease"), StandardCharsets.UTF_8));
+
+            a.release("unit");
+            assertTrue(b.tryClaim("unit"));
+        }
+    }
+
+    @Test
+    void expiredLeaseIsStolen() throws IOException {
+        try (LeaseStore a = new LeaseStore(dir, "a", TTL);
+             LeaseStore b = new LeaseStore(dir, "b", TTL)) {
+            assertTrue(a.tryClaim("unit"));
+            Files.setLastModifiedTime(dir.resolve("unit.lease"), FileTime.fromMillis(System.currentTimeMillis() - 2 * TTL));
+
+            assertTrue(b.tryClaim("unit"));
+            assertEquals("b", Files.readString(dir.resolve("unit.lease"), StandardCharsets.UTF_8));
+
+            // původní držitel o lease přišel - dokončit ho už nesmí
+            assertThrows(IllegalStateException.class, () -> a.complete("unit"));
+            assertFalse(a.isHeld("unit"));
+            assertFalse(a.isDone("unit"));
+        }
+    }
+
+    @Test
+    void liveLeaseIsNotStolen() throws IOException {
+        try (LeaseStore a = new LeaseStore(dir, "a", TTL);
+             LeaseStore b = new LeaseStore(dir, "b", TTL)) {
+            assertTrue(a.tryClaim("unit"));
+            assertFalse(b.tryClaim("unit"));
+            assertTrue(Files.exists(dir.resolve("unit.lease")));
+        }
+    }
+
+    @Test
+    void completedUnitCannotBeClaimed() throws IOException {
+        try (LeaseStore a = new LeaseStore(dir, "a", TTL);
+             LeaseStore b = new LeaseStore(dir, "b", TTL)) {
+            assertTrue(a.tryClaim("unit"));
+            a.complete("unit");
+
+            assertTrue(b.isDone("unit"));
+            assertFalse(Files.exists(dir.resolve("unit.lease")));
+            assertFalse(b.tryClaim("unit"));
+            assertFalse(a.tryClaim("unit"));
+        }
+    }
+
+    @Test
+    void closeReleasesHeldLeases() throws IOException {
+        try (LeaseStore a = new LeaseStore(dir, "a", TTL)) {
+            assertTrue(a.tryClaim("unit"));
+        }
+        try (LeaseStore b = new LeaseStore(dir, "b", TTL)) {
+            assertTrue(b.tryClaim("unit"));
+        }
+    }
+}
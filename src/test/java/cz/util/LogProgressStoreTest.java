@@ -0,0 +1,219 @@
+package cz.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogProgressStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void truncatedLastRecordIsDroppedOnOpen() throws IOException {
+        Path log = dir.resolve("progress.txt");
+        Files.writeString(log, "a\nb\ntorzo", StandardCharsets.UTF_8);
+
+        try (LogProgressStore store = new LogProgressStore(log)) {
+            assertTrue(store.contains("a"));
+            assertTrue(store.contains("b"));
+            assertFalse(store.contains("torzo"));
+            store.add("c");
+        }
+
+        assertEquals(List.of("a", "b", "c"), Files.readAllLines(log));
+    }
+
+    @Test
+    void duplicateAddIsNoOp() throws IOException {
+        Path log = dir.resolve("progress.txt");
+        try (LogProgressStore store = new LogProgressStore(log)) {
+            store.add("a");
+            store.flush();
+            store.add("a");
+            store.add("b");
+            store.add("b");
+        }
+
+        assertEquals(List.of("a", "b"), Files.readAllLines(log));
+    }
+
+    @Test
+    void addAfterCloseThrows() throws IOException {
+        LogProgressStore store = new LogProgressStore(dir.resolve("progress.txt"));
+        store.close();
+
+        assertThrows(IllegalStateException.class, () -> store.add("a"));
+        store.close(); // druhé zavření nic nedělá
+    }
+
+    @Test
+    void failedWriteKeepsUnwrittenRecords() throws IOException {
+        Path log = dir.resolve("progress.txt");
+        FailingChannel[] channel = new FailingChannel[1];
+        try (LogProgressStore store = new LogProgressStore(log, p -> channel[0] = new FailingChannel(
+                FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+            // pozadí flushuje každých 200 ms, chyby se proto nastavují před přidáním záznamů
+            channel[0].failAfter = 8; // "first\nse" se zapíše, pak disk selže
+            store.add("first");
+            store.add("second");
+            assertThrows(IOException.class, store::flush);
+
+            store.add("third"); // nesmí přepsat nezapsaný zbytek
+            assertThrows(IOException.class, store::flush);
+
+            channel[0].failAfter = Long.MAX_VALUE;
+            store.flush();
+        }
+
+        assertEquals(List.of("first", "second", "third"), Files.readAllLines(log));
+    }
+
+    @Test
+    void failedForceIsRetriedWithoutNewRecords() throws IOException {
+        Path log = dir.resolve("progress.txt");
+        FailingChannel[] channel = new FailingChannel[1];
+        try (LogProgressStore store = new LogProgressStore(log, p -> channel[0] = new FailingChannel(
+                FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+            channel[0].failForce = true;
+            store.add("a");
+            assertThrows(IOException.class, store::flush);
+
+            channel[0].failForce = false;
+            store.flush();
+            assertEquals(1, channel[0].forced, "zapsaný záznam se po selhání force znovu fsyncne");
+        }
+
+        assertEquals(List.of("a"), Files.readAllLines(log));
+    }
+
+    /**
+     * Kanál, který po failAfter bajtech zápisu (nebo při force) hodí IOException.
+     */
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel delegate;
+        volatile long failAfter = Long.MAX_VALUE;
+        volatile boolean failForce;
+        volatile int forced;
+
+        FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failAfter <= 0) {
+                throw new IOException("disk plný");
+            }
+            int length = (int) Math.min(src.remaining(), failAfter);
+            ByteBuffer part = src.slice(src.position(), length);
+            int written = delegate.write(part);
+            src.position(src.position() + written);
+            failAfter -= written;
+            return written;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failForce) {
+                throw new IOException("fsync selhal");
+            }
+            delegate.force(metaData);
+            forced++;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}